@@ -5,6 +5,7 @@ import java.awt.event.MouseEvent;
 import connectgame.engine.Connect4;
 import connectgame.engine.ConnectGame;
 import connectgame.engine.GameBoard;
+import connectgame.engine.Search;
 
 /**
  * <h4>ConnectGameUI</h4>
@@ -31,6 +32,7 @@ public class ConnectGameUI {
     private GameMode currentMode;
 
     private boolean isDone = false;
+    private boolean analysisMode = false;
 
     /**
      * Constructs a new ConnectGameUI object with a new Connect4 game, and the mode
@@ -54,6 +56,7 @@ public class ConnectGameUI {
         this.game = new Connect4();
         this.currentMode = mode;
         this.playerDisk = playerDisk;
+        this.game.setPondering(mode == GameMode.PLAYER_V_COMPUTER);
     }
 
     /**
@@ -133,10 +136,19 @@ public class ConnectGameUI {
     }
 
     /**
-     * Sets the isDone boolean to true.
+     * Sets the isDone boolean to true, and stops any pondering.
      */
     public void finish() {
         isDone = true;
+        game.stopPondering();
+    }
+
+    /**
+     * Stops the computer thinking in the background (pondering), if it is.
+     * Should be called before this ConnectGameUI is discarded.
+     */
+    public void stopPondering() {
+        game.stopPondering();
     }
 
     /**
@@ -146,6 +158,55 @@ public class ConnectGameUI {
         return isDone;
     }
 
+    /**
+     * Turns analysis mode on or off. In analysis mode the GUI shows the score of
+     * each column (see {@code analyse()}) whenever it is the player's turn.
+     */
+    public void setAnalysisMode(boolean analysisMode) {
+        this.analysisMode = analysisMode;
+    }
+
+    /**
+     * Returns whether analysis mode is on.
+     */
+    public boolean isAnalysisMode() {
+        return analysisMode;
+    }
+
+    /**
+     * Scores every column for the disk whose turn it is. This can take as long
+     * as a computer move, so it should be run in a separate thread.
+     * 
+     * @return An array with the score of each column, with
+     *         {@code ConnectGame.NO_SCORE} for columns that can't be played, or null
+     *         if the thread was interrupted.
+     */
+    public int[] analyse() {
+        return game.analyse();
+    }
+
+    /**
+     * Returns a short description of a score from {@code analyse()}, for the
+     * player to move. "W3" means the player can win in 3 moves, "L3" means the
+     * player will lose in 3 moves (if the opponent plays perfectly), anything
+     * else is the score itself.
+     * 
+     * @param score The score.
+     * @return The description, or an empty String for {@code NO_SCORE}.
+     */
+    public String scoreText(int score) {
+        if (score == ConnectGame.NO_SCORE) {
+            return "";
+        }
+        if (Math.abs(score) > Search.WIN) {
+            // The score includes the amount of empty spaces left when the game ends.
+            int emptySpaces = gameColumns() * gameRows() - getGameBoard().getDiskCount();
+            int plies = emptySpaces - (Math.abs(score) - Search.WIN);
+            return (score > 0 ? "W" : "L") + ((plies + 1) / 2);
+        }
+        return Integer.toString(score);
+    }
+
     /**
      * Use this method to set the size of the disks (Spaces) on the gameboard.
      * This property is by default set to 50.
@@ -27,6 +27,7 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
+import javax.swing.SwingConstants;
 import javax.swing.UIManager;
 import javax.swing.WindowConstants;
 import javax.swing.Timer;
@@ -90,6 +91,7 @@ public class GUI extends MouseAdapter {
     protected static final Font TITLE_FONT = new Font(FONT_NAME, Font.PLAIN, 40);
     protected static final Font LABEL_FONT = new Font(FONT_NAME, Font.PLAIN, 20);
     protected static final Font SUBTITLE_FONT = new Font(FONT_NAME, Font.PLAIN, 30);
+    protected static final Font ANALYSIS_FONT = new Font(FONT_NAME, Font.PLAIN, 14);
     protected static final String NEW_GAME_STRING = "New Game";
 
     // Sounds
@@ -97,11 +99,14 @@ public class GUI extends MouseAdapter {
     protected static final File MOVE_PLAYED_SOUND = new File("connect4/sounds/Move Played Sound.wav");
     protected static final String FX_ON = "FX: On";
     protected static final String FX_OFF = "FX: Off";
+    protected static final String ANALYSIS_ON = "Analysis: On";
+    protected static final String ANALYSIS_OFF = "Analysis: Off";
 
     // GUI level fields.
     protected ConnectGameUI ui;
     protected Screen currentScreen;
     protected ComputerMove computerMoveThread;
+    protected AnalysisThread analysisThread;
     protected int currentWidth;
     protected int currentHeight;
     protected boolean soundFXToggle = true;
@@ -112,6 +117,7 @@ public class GUI extends MouseAdapter {
     // Components that need to be accessed by multiple methods:
     // Game Screen
     protected JLabel[][] board;
+    protected JLabel[] analysisLabels;
     protected JLabel turnLabel;
     protected int currentShadedColumn;
     protected JLabel undoWarning;
@@ -234,6 +240,11 @@ public class GUI extends MouseAdapter {
             panels[panelNo].add(undoWarning);
         }
 
+        JButton analysisButton = new JButton(ui.isAnalysisMode() ? ANALYSIS_ON : ANALYSIS_OFF); // Analysis toggle
+        analysisButton.setBounds(ui.gameColumns() * DISK_SIZE + 30, 210, 150, 40);
+        analysisButton.setFont(ANALYSIS_FONT);
+        analysisButton.addActionListener(new ToggleAnalysisListener());
+
         JButton helpButton = new JButton("Help"); // Help Button
         helpButton.addActionListener(new HelpButtonListener());
         helpButton.setBounds(currentWidth - 100, 5, 80, 20);
@@ -243,6 +254,7 @@ public class GUI extends MouseAdapter {
 
         panels[panelNo].add(toggleSoundFXButton);
         panels[panelNo].add(helpButton);
+        panels[panelNo].add(analysisButton);
         panels[panelNo].add(gameTitle);
         panels[panelNo].add(newGameButton);
         panels[panelNo].add(turnLabel);
@@ -393,12 +405,18 @@ public class GUI extends MouseAdapter {
         final int columns = ui.gameColumns();
         final int rows = ui.gameRows();
         board = new JLabel[ui.gameColumns()][ui.gameRows()];
+        analysisLabels = new JLabel[ui.gameColumns()];
         for (int i = 0; i < columns; i++) {
             // Adds a number marker for each column.
             JLabel numberMarker = new JLabel("" + (i + 1));
             numberMarker.setBounds(i * DISK_SIZE + 5 + (DISK_SIZE / 2), 25 + (rows + 1) * DISK_SIZE, DISK_SIZE, 20);
             numberMarker.setFont(LABEL_FONT);
             panels[Screen.GAME_SCREEN.panelArrayPosition()].add(numberMarker);
+            // Adds an analysis label above each column (empty unless analysis mode is on).
+            analysisLabels[i] = new JLabel("", SwingConstants.CENTER);
+            analysisLabels[i].setBounds(i * DISK_SIZE + 10, 45, DISK_SIZE, 20);
+            analysisLabels[i].setFont(ANALYSIS_FONT);
+            panels[Screen.GAME_SCREEN.panelArrayPosition()].add(analysisLabels[i]);
             for (int j = 0; j < rows; j++) {
                 // Loops through each space on the GameBoard and adds a JLabel.
                 // These will have an ImageIcon of the correct disk (after updateBoard() is
@@ -487,6 +505,43 @@ public class GUI extends MouseAdapter {
         } else {
             updateFieldsPostGame();
         }
+        updateAnalysis();
+    }
+
+    /**
+     * Clears the analysis labels and, if analysis mode is on and it is the
+     * player's turn, starts a new analysis of the current position.
+     */
+    private synchronized void updateAnalysis() {
+        if (analysisThread != null) {
+            analysisThread.interrupt(); // The old analysis is out of date.
+            analysisThread = null;
+        }
+        for (JLabel analysisLabel : analysisLabels) {
+            analysisLabel.setText("");
+        }
+        if (ui.isAnalysisMode() && ui.getWinner() == 0 && ui.isPlayersTurn()) {
+            analysisThread = new AnalysisThread();
+            analysisThread.start();
+        }
+    }
+
+    /**
+     * Shows the scores from an analysis, if the analysis is still the current
+     * one.
+     * 
+     * @param source The AnalysisThread the scores came from.
+     * @param scores The scores from {@code ConnectGameUI.analyse()}.
+     */
+    private synchronized void showAnalysis(AnalysisThread source, int[] scores) {
+        if (source != analysisThread) {
+            return;
+        }
+        for (int i = 0; i < analysisLabels.length; i++) {
+            analysisLabels[i].setText(ui.scoreText(scores[i]));
+            analysisLabels[i].setForeground(scores[i] > 0 ? PLAYER_COLORS[ui.getGame().currentTurn()]
+                    : PLAYER_COLORS[GameBoard.BLANK]);
+        }
     }
 
     /**
@@ -661,6 +716,25 @@ public class GUI extends MouseAdapter {
         }
     }
 
+    /**
+     * Analyses the current position in a separate thread, and shows the scores
+     * above the columns when done. Interrupting this thread discards the
+     * analysis.
+     */
+    private class AnalysisThread extends Thread {
+        AnalysisThread() {
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int[] scores = ui.analyse();
+            if (scores != null && !Thread.currentThread().isInterrupted()) {
+                showAnalysis(this, scores);
+            }
+        }
+    }
+
     /**
      * Game Screen:
      * <p>
@@ -697,7 +771,7 @@ public class GUI extends MouseAdapter {
          */
         private boolean undoPlayerVPlayer() {
             // If the mode is player v player, undo 1 move
-            if (!ui.getGame().getPlayStack().isEmpty()) {
+            if (!ui.getGame().getHistory().isEmpty()) {
                 ui.undoLast();
                 return true;
             } else {
@@ -711,7 +785,7 @@ public class GUI extends MouseAdapter {
          */
         private boolean undoPlayerVComputer() {
             if (ui.isPlayersTurn()) {
-                if (ui.getGame().getPlayStack().size() > 1) {
+                if (ui.getGame().getHistory().size() > 1) {
                     // If there are at least 2 moves to undo, it is player's turn
                     // and mode is player v computer (or random), undo 2 moves.
                     ui.undoLast();
@@ -721,7 +795,7 @@ public class GUI extends MouseAdapter {
                     return false;
                 }
             } else {
-                if (ui.getGame().getPlayStack().size() > 0) {
+                if (ui.getGame().getHistory().size() > 0) {
                     // Interrupts the computer thread so the computer won't play it's move.
                     computerMoveThread.interrupt();
                     ui.undoLast();
@@ -851,6 +925,9 @@ public class GUI extends MouseAdapter {
                 default:
                     ngStartPlayer = 1; // Should never happen.
             }
+            if (ui != null) {
+                ui.stopPondering(); // Make sure the old game isn't still thinking.
+            }
             ui = new ConnectGameUI(ngGameMode, ngStartPlayer);
             initGameScreen(allowUndoCheckBox.isSelected()); // Read the undo move? checkbox and init game screen
             if (!ui.isPlayersTurn()) {
@@ -936,6 +1013,22 @@ public class GUI extends MouseAdapter {
         }
     }
 
+    /**
+     * Game Screen:
+     * <p>
+     * An Action Listener for the analysis mode toggle button.
+     */
+    private class ToggleAnalysisListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            ui.setAnalysisMode(!ui.isAnalysisMode());
+            AbstractButton thisComponent = (AbstractButton) e.getSource();
+            thisComponent.setText(ui.isAnalysisMode() ? ANALYSIS_ON : ANALYSIS_OFF);
+            playSound(CLICK_SOUND_1);
+            updateAnalysis();
+        }
+    }
+
     /**
      * This is an action listener for the thinking label, so the dots flash,
      * therefore making it
@@ -0,0 +1,84 @@
+package connectgame.engine;
+
+/**
+ * <h4>BatchKernel</h4>
+ * <p>
+ * The loops that play moves on, and check for wins on, a {@link BoardBatch}:
+ * one pass over the arrays of bitboards for a whole range of boards. This is
+ * the plain Java version, used when the Vector API isn't available (see
+ * {@link VectorBatchKernel}), and for the boards left over at the end of each
+ * range by the vector version.
+ */
+class BatchKernel {
+    final int height; // rows + 1, the bits per column.
+    final long boardMask; // The bits of the spaces on the board.
+    final long columnMask; // The bits of the spaces in column 0.
+    final int[][] lineShifts;
+
+    BatchKernel(int columns, int rows, int toWin) {
+        this.height = rows + 1;
+        this.columnMask = (1L << rows) - 1;
+        long mask = 0;
+        for (int i = 0; i < columns; i++) {
+            mask |= columnMask << (i * height);
+        }
+        this.boardMask = mask;
+        this.lineShifts = GameBoard.lineShifts(height, toWin);
+    }
+
+    /**
+     * Returns the name of this kernel, for benchmarks.
+     */
+    String name() {
+        return "scalar";
+    }
+
+    /**
+     * Plays the disk into {@code columns[i]} on each board i from {@code from}
+     * (inclusive) to {@code to} (exclusive). Boards with a negative column, or
+     * a full one, are left as they are.
+     */
+    void play(long[] red, long[] yellow, int disk, int[] columns, int from, int to) {
+        final long[] bits = (disk == GameBoard.RED) ? red : yellow;
+        for (int i = from; i < to; i++) {
+            final int column = columns[i];
+            if (column >= 0) {
+                // Adding the bottom bit of the column carries up to its first empty space.
+                final int shift = column * height;
+                bits[i] |= ((red[i] | yellow[i]) + (1L << shift)) & (columnMask << shift);
+            }
+        }
+    }
+
+    /**
+     * Sets {@code results[i]} to the result of board i (as in
+     * {@link GameBoard#checkWin()}) for each board from {@code from} (inclusive)
+     * to {@code to} (exclusive).
+     */
+    void checkWins(long[] red, long[] yellow, int[] results, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (GameBoard.hasLine(red[i], lineShifts)) {
+                results[i] = GameBoard.RED;
+            } else if (GameBoard.hasLine(yellow[i], lineShifts)) {
+                results[i] = GameBoard.YELLOW;
+            } else {
+                results[i] = ((red[i] | yellow[i]) == boardMask) ? 3 : 0;
+            }
+        }
+    }
+
+    /**
+     * The same as {@code checkWins}, but only checks for a win by the given disk
+     * (the one that just moved, which is the only one that can have won).
+     */
+    void checkWins(long[] red, long[] yellow, int disk, int[] results, int from, int to) {
+        final long[] bits = (disk == GameBoard.RED) ? red : yellow;
+        for (int i = from; i < to; i++) {
+            if (GameBoard.hasLine(bits[i], lineShifts)) {
+                results[i] = disk;
+            } else {
+                results[i] = ((red[i] | yellow[i]) == boardMask) ? 3 : 0;
+            }
+        }
+    }
+}
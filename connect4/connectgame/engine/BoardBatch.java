@@ -0,0 +1,255 @@
+package connectgame.engine;
+
+import java.util.Arrays;
+
+/**
+ * <h4>BoardBatch</h4>
+ * <p>
+ * Many independent boards of the same size, stored as arrays of bitboards
+ * (struct of arrays: all the RED bitboards in one array, all the YELLOW ones
+ * in another) instead of a GameBoard each, so that a move can be played on,
+ * or a win checked for, every board in one pass. This is for workloads over
+ * large populations of boards, such as random playouts and perft.
+ * <p>
+ * If the {@code jdk.incubator.vector} module is present (e.g. run with
+ * {@code --add-modules jdk.incubator.vector}), the passes use the Vector API
+ * and work on several boards per instruction (see {@code isVectorAvailable()});
+ * otherwise they are plain loops. Both give the same results.
+ * <p>
+ * The boards must fit in a long bitboard ({@code columns * (rows + 1) <= 64},
+ * see {@link GameBoard#hasBitboard()}). This class is not thread safe.
+ */
+public class BoardBatch {
+    private static final boolean VECTOR_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector")
+            .isPresent();
+
+    private final int columns;
+    private final int rows;
+    private final int toWin;
+    private final BatchKernel kernel;
+    private long[] red;
+    private long[] yellow;
+    private int size = 0;
+
+    // Scratch space for randomPlayouts, so it only allocates when the batch grows.
+    private long[] playoutRed;
+    private long[] playoutYellow;
+    private int[] playoutResults;
+    private int[] playoutOrder;
+
+    /**
+     * Constructs an empty BoardBatch, using the Vector API if it is available.
+     *
+     * @param capacity The initial amount of boards it can hold (it grows if
+     *                 needed).
+     * @throws IllegalArgumentException if the boards don't fit in a long.
+     */
+    public BoardBatch(int columns, int rows, int toWin, int capacity) {
+        this(columns, rows, toWin, capacity, VECTOR_AVAILABLE);
+    }
+
+    /**
+     * Constructs an empty BoardBatch.
+     *
+     * @param capacity   The initial amount of boards it can hold (it grows if
+     *                   needed).
+     * @param vectorized Whether to use the Vector API (ignored if it isn't
+     *                   available). Mainly for benchmarks.
+     * @throws IllegalArgumentException if the boards don't fit in a long.
+     */
+    public BoardBatch(int columns, int rows, int toWin, int capacity, boolean vectorized) {
+        if (columns * (rows + 1) > 64) {
+            throw new IllegalArgumentException("A BoardBatch needs boards that fit in a long bitboard.");
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.toWin = toWin;
+        this.kernel = (vectorized && VECTOR_AVAILABLE) ? VectorBatchKernel.create(columns, rows, toWin)
+                : new BatchKernel(columns, rows, toWin);
+        this.red = new long[Math.max(1, capacity)];
+        this.yellow = new long[red.length];
+    }
+
+    /**
+     * Whether the Vector API ({@code jdk.incubator.vector}) is available in this
+     * JVM.
+     */
+    public static boolean isVectorAvailable() {
+        return VECTOR_AVAILABLE;
+    }
+
+    /**
+     * Returns a description of how the passes run (e.g. "vector (8 lanes)" or
+     * "scalar").
+     */
+    public String getKernelName() {
+        return kernel.name();
+    }
+
+    /**
+     * Adds a copy of the position on a GameBoard to the end of the batch.
+     *
+     * @return The index of the new board.
+     * @throws IllegalArgumentException if the GameBoard is a different size.
+     */
+    public int add(GameBoard board) {
+        if (board.columns() != columns || board.rows() != rows || board.toWin() != toWin) {
+            throw new IllegalArgumentException("The GameBoard is a different size from the batch.");
+        }
+        return add(board.getBitboard(GameBoard.RED), board.getBitboard(GameBoard.YELLOW));
+    }
+
+    /**
+     * Adds a position, given as bitboards (see {@link GameBoard#getBitboard}), to
+     * the end of the batch.
+     *
+     * @return The index of the new board.
+     */
+    public int add(long redBits, long yellowBits) {
+        if (size == red.length) {
+            red = Arrays.copyOf(red, size * 2);
+            yellow = Arrays.copyOf(yellow, size * 2);
+        }
+        red[size] = redBits;
+        yellow[size] = yellowBits;
+        return size++;
+    }
+
+    /**
+     * Removes every board.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the amount of boards in the batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the bitboard of the given disk on board {@code index}.
+     */
+    public long getBitboard(int index, int disk) {
+        checkIndex(index);
+        return (disk == GameBoard.RED) ? red[index] : yellow[index];
+    }
+
+    /**
+     * Returns the amount of disks on board {@code index}.
+     */
+    public int getDiskCount(int index) {
+        checkIndex(index);
+        return Long.bitCount(red[index] | yellow[index]);
+    }
+
+    /**
+     * Plays the disk into {@code columns[i]} on every board i.
+     *
+     * @param disk    RED or YELLOW (1 or 2).
+     * @param columns The column for each board (at least {@code size()} long). A
+     *                negative column skips that board, and so does a full one.
+     */
+    public void play(int disk, int[] columns) {
+        checkLength(columns);
+        kernel.play(red, yellow, disk, columns, 0, size);
+    }
+
+    /**
+     * Checks every board for a win, like {@link GameBoard#checkWin()}.
+     *
+     * @param results Where to put the result for each board (at least
+     *                {@code size()} long): RED or YELLOW (1 or 2) if they have
+     *                won, 3 for a draw, otherwise 0.
+     */
+    public void checkWins(int[] results) {
+        checkLength(results);
+        kernel.checkWins(red, yellow, results, 0, size);
+    }
+
+    /**
+     * Plays a random game to the end from every board (starting with the given
+     * disk on all of them), like {@link GameBoard#randomPlayout}, and stores the
+     * results. The boards in the batch are left as they were.
+     * <p>
+     * Every board moves at once: each step plays a random move on each board
+     * still playing, then checks them all for a win in one pass (like
+     * {@code checkWins}, but only for the disk that moved).
+     *
+     * @param disk    The disk to move first (RED or YELLOW).
+     * @param random  The random number generator to use.
+     * @param results Where to put the result for each board (at least
+     *                {@code size()} long): RED or YELLOW (1 or 2) for the winner,
+     *                or 3 for a draw.
+     */
+    public void randomPlayouts(int disk, FastRandom random, int[] results) {
+        checkLength(results);
+        if (playoutRed == null || playoutRed.length < size) {
+            playoutRed = new long[red.length];
+            playoutYellow = new long[red.length];
+            playoutResults = new int[red.length];
+            playoutOrder = new int[red.length];
+        }
+        final long[] playRed = playoutRed;
+        final long[] playYellow = playoutYellow;
+        final int[] step = playoutResults;
+        final int[] order = playoutOrder;
+        kernel.checkWins(red, yellow, results, 0, size);
+        final long columnMask = (1L << rows) - 1; // The spaces in column 0.
+        final int height = rows + 1;
+        // The boards still playing are kept in a range [0, playing) by swapping
+        // finished ones to the end, with where each one came from in order[].
+        int playing = 0;
+        for (int i = 0; i < size; i++) {
+            if (results[i] == 0) {
+                order[playing] = i;
+                playRed[playing] = red[i];
+                playYellow[playing] = yellow[i];
+                playing++;
+            }
+        }
+        while (playing > 0) {
+            final long[] bits = (disk == GameBoard.RED) ? playRed : playYellow;
+            for (int i = 0; i < playing; i++) {
+                // Pick columns until one isn't full (which is still a uniform pick
+                // of the legal columns, and rarely needs a second try), and play
+                // straight onto the bitboard.
+                final long filled = playRed[i] | playYellow[i];
+                long bit;
+                do {
+                    final int shift = random.nextInt(columns) * height;
+                    bit = (filled + (1L << shift)) & (columnMask << shift);
+                } while (bit == 0);
+                bits[i] |= bit;
+            }
+            kernel.checkWins(playRed, playYellow, disk, step, 0, playing);
+            for (int i = 0; i < playing; i++) {
+                if (step[i] != 0) {
+                    results[order[i]] = step[i];
+                    // Move the last board still playing into this slot.
+                    playing--;
+                    order[i] = order[playing];
+                    playRed[i] = playRed[playing];
+                    playYellow[i] = playYellow[playing];
+                    step[i] = step[playing];
+                    i--;
+                }
+            }
+            disk = 3 - disk;
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Board " + index + " of " + size);
+        }
+    }
+
+    private void checkLength(int[] array) {
+        if (array.length < size) {
+            throw new IllegalArgumentException("The array is shorter than the batch.");
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package connectgame.engine;
 
-import java.util.LinkedList;
-
 public interface ConnectGame {
+    /**
+     * The score given by {@code analyse()} to a column that can't be played.
+     */
+    public static final int NO_SCORE = Integer.MIN_VALUE;
+
     /**
      * Plays a disk (based on whose turn it is) into the column specified.
      * If an error occurs due to an illegal move, this method will
@@ -44,9 +47,10 @@ public interface ConnectGame {
     public boolean undoLast();
 
     /**
-     * Returns the current play stack.
+     * Returns the moves played so far, oldest first. This is a read-only view of
+     * the game's own history, so it changes as moves are played and undone.
      */
-    public LinkedList<Play> getPlayStack();
+    public MoveHistory getHistory();
 
     /**
      * Returns the most recent Play, null if none.
@@ -101,4 +105,42 @@ public interface ConnectGame {
      * algorithm.
      */
     public void playComputer();
-}
\ No newline at end of file
+
+    /**
+     * Turns pondering on or off. When pondering is on, the computer keeps
+     * searching in the background after {@code playComputer()} has played its
+     * move, so that its next move can be played sooner.
+     * 
+     * @param pondering {@code true} to turn pondering on.
+     */
+    public void setPondering(boolean pondering);
+
+    /**
+     * Stops any pondering that is currently running, waiting for it to end.
+     * Should be called when the game is abandoned.
+     */
+    public void stopPondering();
+
+    /**
+     * Scores every column in the current position for the disk whose turn it
+     * is, using the same algorithm (and depth) as {@code playComputer()}. The
+     * columns may be searched concurrently.
+     * 
+     * @return An array with the score of each column (the higher, the better for
+     *         the player to move), with {@code NO_SCORE} for columns that can't be
+     *         played. Returns null if the thread was interrupted.
+     */
+    public int[] analyse();
+
+    /**
+     * Finds the best {@code k} moves in the current position for the disk whose
+     * turn it is, using the same algorithm (and depth) as {@code playComputer()},
+     * in a single search.
+     * 
+     * @param k The maximum amount of moves to return (at least 1).
+     * @return The moves, best first, each with its score and principal variation.
+     *         Empty if the game is over.
+     * @throws IllegalArgumentException if {@code k < 1}.
+     */
+    public SearchResult[] getBestMoves(int k);
+}
@@ -0,0 +1,733 @@
+package connectgame.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * <h4>ConnectN</h4>
+ * <p>
+ * A ConnectGame on a board of any size, with any length of line to win (for
+ * example Connect 5 on 8x7 or 9x7). It plays and searches the same way as
+ * {@link Connect4}, which is the 7x6, four in a row version.
+ * <p>
+ * The search checks for wins in a few operations on any size of board (see
+ * {@link GameBoard#checkWin()}), so it visits about as many positions per
+ * second on the bigger boards as on the classic one. The MONTE_CARLO strategy
+ * only works on boards that fit in a single long (such as 8x7), so on bigger
+ * boards computer moves use MINIMAX instead.
+ */
+public class ConnectN implements ConnectGame {
+
+    private static final int BLANK = GameBoard.BLANK;
+    private static final int RED = GameBoard.RED;
+    private static final int YELLOW = GameBoard.YELLOW;
+    private static final int TABLE_CAPACITY = 4_000_000; // Default max transposition table entries.
+    private static final int ROOT_CACHE_CAPACITY = 1024; // Default max cached root searches.
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final ForkJoinPool SEARCH_POOL = new ForkJoinPool(CORES); // Shared by all games; threads are daemons.
+    private static final int SHARED_TABLE_CAPACITY = 1 << 22; // Default shared table entries (64MB).
+    private static SharedTranspositionTable sharedTable; // Created when a game first uses it.
+    private static int sharedTableCapacity = SHARED_TABLE_CAPACITY;
+
+    private final int columns;
+    private final int rows;
+    private final int toWin;
+    private GameBoard current;
+    private int currentTurn;
+    private int winner;
+    private MoveHistory history; // This is so moves can be undone
+    private TranspositionTable transpositionTable; // Tansposition table for minimax
+    private int tableCapacity = TABLE_CAPACITY; // Of the game's own table.
+    private boolean useSharedTable = false; // Whether transpositionTable is a view of the shared table.
+    private int depth = 10; // The initial depth to search when playing a computer move.
+    private boolean adaptiveDepth = true; // Whether to adjust the depth based on the time taken.
+    private long timeBudgetMillis = 0; // If > 0, search with iterative deepening for at most this long.
+    private boolean evaluation = true; // Whether searches score their leaves with GameBoard.getEvaluation.
+    private boolean drawDetection = true; // Whether searches stop at positions no one can win.
+    private SearchResult lastResult; // The result of the last computer move's search.
+    private RootCache rootCache; // Finished root searches, so revisited positions are answered instantly.
+    private byte[] computerDepths;
+    /*
+     * Whenever a computer move is played, the depth that was used (plus 1) is
+     * stored in computerDepths at the index of the move in the history (other
+     * moves have 0). When a move is undone, if it was a computer move, the
+     * depth is set back to the depth that move was played with.
+     */
+
+    private Strategy strategy = Strategy.MINIMAX;
+    private long monteCarloPlayouts = 400_000; // Monte Carlo budget: total playouts (0 for no limit)
+    private long monteCarloTimeMillis = 0; // and time (0 for no limit).
+    private boolean rave = true;
+    private int monteCarloWorkers = CORES;
+
+    private boolean pondering = false;
+    private volatile Ponderer ponderer;
+    private ConcurrentHashMap<Long, PonderResult> ponderResults;
+    /*
+     * When pondering is on, after the computer plays a move it keeps searching
+     * in the background (see Ponderer) while the player is thinking. The
+     * predicted reply (from the principal variation) is searched first, then
+     * all the other replies. The searches fill the transposition table, and any
+     * that finish are kept in ponderResults, keyed by position, so that if the
+     * player makes one of those moves the computer can play straight away.
+     */
+
+    /**
+     * Constructs an empty game object with the given dimensions, RED (1) to
+     * start, and an empty history.
+     * 
+     * @param columns The amount of columns (at most 64).
+     * @param rows    The amount of rows (at most {@link Search#MAX_CELLS}
+     *                spaces in all, so every score fits the search).
+     * @param toWin   The amount of disks in a row needed to win.
+     * @throws IllegalArgumentException if any of the sizes are out of range.
+     */
+    public ConnectN(int columns, int rows, int toWin) {
+        if (columns < 1 || columns > MoveHistory.MAX_COLUMN + 1 || rows < 1 || toWin < 1
+                || toWin > Math.max(columns, rows) || (long) columns * rows > Search.MAX_CELLS) {
+            throw new IllegalArgumentException(
+                    "Invalid board size: " + columns + "x" + rows + " with " + toWin + " to win.");
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.toWin = toWin;
+        current = new GameBoard(columns, rows, toWin);
+        currentTurn = RED;
+        winner = 0;
+        history = new MoveHistory(columns * rows);
+        computerDepths = new byte[columns * rows];
+        transpositionTable = new LocalTranspositionTable(TABLE_CAPACITY);
+        rootCache = new RootCache(ROOT_CACHE_CAPACITY);
+        ponderResults = new ConcurrentHashMap<>();
+    }
+
+    public void play(int column) {
+        if (column >= 0 && column < columns && current.getNextDiskIndices()[column] < rows) {
+            current.putDisk(currentTurn, column);
+            history.push(currentTurn, column);
+            computerDepths[history.size() - 1] = 0;
+            winner = current.checkWin();
+            currentTurn = (currentTurn == RED) ? YELLOW : RED;
+        } else {
+            throw new IndexOutOfBoundsException(
+                    "An Illegal Move was played. Column given: " + column + "  Total columns: " + columns);
+        }
+    }
+
+    public boolean safePlay(int column) {
+        if (column >= 0 && column < columns && current.getNextDiskIndices()[column] < rows) {
+            current.putDisk(currentTurn, column);
+            history.push(currentTurn, column);
+            computerDepths[history.size() - 1] = 0;
+            winner = current.checkWin();
+            currentTurn = (currentTurn == RED) ? YELLOW : RED;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public boolean undoLast() {
+        stopPondering();
+        if (!history.isEmpty()) {
+            current.popDisk(MoveHistory.columnOf(history.pop()));
+            if (computerDepths[history.size()] != 0) {
+                // Backtrack the depth. For example if the last move was played using 11 depth,
+                // and that move is undone, the next move needs to be done with 11 depth.
+                depth = computerDepths[history.size()] - 1;
+            }
+            winner = 0; // The game can't have ended before the last move.
+            currentTurn = (currentTurn == RED) ? YELLOW : RED;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    public MoveHistory getHistory() {
+        return history;
+    }
+
+    public Play getLast() {
+        return history.isEmpty() ? null : history.getPlay(history.size() - 1);
+    }
+
+    public int currentTurn() {
+        return currentTurn;
+    }
+
+    public int getWinner() {
+        return winner;
+    }
+
+    public GameBoard getGameBoard() {
+        return current;
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int toWin() {
+        return toWin;
+    }
+
+    public void playRandom() {
+        // Pick the column without allocating, using this thread's own generator.
+        play(current.getRandomLegal(FastRandom.current()));
+    }
+
+    public int[] analyse() {
+        final int disk = currentTurn;
+        final GameBoard root = new GameBoard(current);
+        final int searchDepth = depth;
+        int[] scores = new int[columns];
+        Arrays.fill(scores, NO_SCORE);
+        if (winner != 0) {
+            return scores;
+        }
+        // One task per root move, all sharing the transposition table.
+        int[] legal = root.getLegal();
+        Search[] searches = new Search[legal.length];
+        List<Future<SearchResult>> tasks = new ArrayList<>(legal.length);
+        for (int i = 0; i < legal.length; i++) {
+            GameBoard board = new GameBoard(root);
+            board.putDisk(disk, legal[i]);
+            searches[i] = newSearch(board);
+            final Search search = searches[i];
+            tasks.add(SEARCH_POOL.submit(() -> search.evaluate(searchDepth, 3 - disk)));
+        }
+        try {
+            for (int i = 0; i < legal.length; i++) {
+                SearchResult result = tasks.get(i).get();
+                if (!result.isComplete()) {
+                    return null;
+                }
+                scores[legal[i]] = -result.getScore();
+            }
+        } catch (InterruptedException e) {
+            for (Search search : searches) {
+                search.stop();
+            }
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("An analysis task failed.", e.getCause());
+        }
+        return scores;
+    }
+
+    public SearchResult[] getBestMoves(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Can't find the best " + k + " moves: k must be at least 1.");
+        }
+        if (winner != 0) {
+            return new SearchResult[0];
+        }
+        return newSearch(new GameBoard(current)).searchMultiPV(depth, currentTurn, k);
+    }
+
+    /**
+     * Searches the current position for the disk whose turn it is with
+     * iterative deepening, like a MINIMAX computer move with a time budget,
+     * but with limits of its own and without playing the move. It can be
+     * stopped from another thread by interrupting the thread running it.
+     * 
+     * @param maxDepth    The deepest depth to search (as in {@code setDepth}).
+     * @param timeMillis  The most time to take in milliseconds, or 0 for no limit.
+     * @param maxNodes    The most positions to visit, or 0 for no limit.
+     * @param onIteration Called with the result of each depth as soon as it
+     *                    finishes (on the searching thread), or null.
+     * @return The result of the deepest search that finished (incomplete if it
+     *         was interrupted), or null if the game is over.
+     */
+    public SearchResult search(int maxDepth, long timeMillis, long maxNodes, Consumer<SearchResult> onIteration) {
+        if (winner != 0) {
+            return null;
+        }
+        Search search = newSearch(new GameBoard(current));
+        if (maxNodes > 0) {
+            search.setNodeLimit(maxNodes);
+        }
+        search.setIterationListener(onIteration);
+        return search.searchIterative(Math.min(maxDepth, columns * rows - history.size() - 1), currentTurn,
+                timeMillis);
+    }
+
+    /**
+     * Searches the current position to {@code depth} (counted from here, as in
+     * {@link Search#evaluate}) within the window {@code (alpha, beta)}, and
+     * returns its score for the disk whose turn it is. A score outside the
+     * window is only a bound (see {@link SearchResult#getScoreType()}). This
+     * is for searching part of a bigger tree, so it uses this game's settings
+     * and transposition table, but not the depth. It can be stopped by
+     * interrupting the thread running it.
+     */
+    public SearchResult evaluate(int depth, int alpha, int beta) {
+        return newSearch(new GameBoard(current)).evaluate(depth, currentTurn, alpha, beta);
+    }
+
+    public void setPondering(boolean pondering) {
+        this.pondering = pondering;
+        if (!pondering) {
+            stopPondering();
+        }
+    }
+
+    public void stopPondering() {
+        Ponderer activePonderer = ponderer;
+        if (activePonderer != null) {
+            activePonderer.halt();
+            try {
+                activePonderer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ponderer = null;
+        }
+    }
+
+    /**
+     * Stops pondering and returns the pondered result for the current position,
+     * if there is one that is deep enough. If the ponderer is searching the
+     * current position right now, this waits for that search to finish instead
+     * of throwing it away.
+     * 
+     * @return The result, or null if the position was not pondered (or the
+     *         thread was interrupted while waiting).
+     */
+    private PonderResult takePonderResult() {
+        final long key = current.getKey();
+        Ponderer activePonderer = ponderer;
+        if (activePonderer != null) {
+            activePonderer.finishOnly(key);
+            try {
+                activePonderer.join();
+            } catch (InterruptedException e) {
+                activePonderer.halt();
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            ponderer = null;
+        }
+        PonderResult ponderResult = ponderResults.get(key);
+        ponderResults.clear();
+        if (ponderResult != null && ponderResult.result.getDepth() >= depth) {
+            return ponderResult;
+        }
+        return null;
+    }
+
+    /**
+     * Sets the algorithm used by {@code playComputer()}. The default is
+     * MINIMAX, which is also used instead of MONTE_CARLO on boards too big for
+     * it (see {@link MonteCarloSearch#supports}).
+     */
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Returns the algorithm used by {@code playComputer()}.
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Sets the budget for each move when the strategy is MONTE_CARLO. The search
+     * ends when either limit is reached.
+     * 
+     * @param playouts   The total amount of playouts, or 0 for no limit.
+     * @param timeMillis The time in milliseconds, or 0 for no limit.
+     * @throws IllegalArgumentException if neither limit is given.
+     */
+    public void setMonteCarloBudget(long playouts, long timeMillis) {
+        if (playouts <= 0 && timeMillis <= 0) {
+            throw new IllegalArgumentException("A Monte Carlo search needs a playout or time limit.");
+        }
+        this.monteCarloPlayouts = playouts;
+        this.monteCarloTimeMillis = timeMillis;
+    }
+
+    /**
+     * Sets whether the MONTE_CARLO strategy uses RAVE. Default true.
+     */
+    public void setRave(boolean rave) {
+        this.rave = rave;
+    }
+
+    /**
+     * Sets the amount of threads the MONTE_CARLO strategy uses. Default is the
+     * amount of cores. Use 1 when lots of games are played at once.
+     */
+    public void setMonteCarloWorkers(int workers) {
+        this.monteCarloWorkers = Math.max(1, workers);
+    }
+
+    /**
+     * Sets the depth for the next MINIMAX computer move.
+     * 
+     * @param depth    The depth to search after each move (0 looks 1 move
+     *                 ahead).
+     * @param adaptive If true (the default) the depth is adjusted after each move
+     *                 based on how long the search took. If false the depth stays
+     *                 fixed.
+     */
+    public void setDepth(int depth, boolean adaptive) {
+        this.depth = depth;
+        this.adaptiveDepth = adaptive;
+    }
+
+    /**
+     * Returns the depth the next MINIMAX computer move will search to.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns whether the depth is adjusted after each move (see
+     * {@code setDepth}).
+     */
+    public boolean isAdaptiveDepth() {
+        return adaptiveDepth;
+    }
+
+    /**
+     * Sets a time budget for each MINIMAX computer move. With a budget, the
+     * search uses iterative deepening up to the current depth and plays the
+     * best move of the deepest search that finished in time.
+     * 
+     * @param timeMillis The budget in milliseconds, or 0 for none (the default).
+     */
+    public void setTimeBudget(long timeMillis) {
+        this.timeBudgetMillis = timeMillis;
+    }
+
+    /**
+     * Sets whether MINIMAX searches score the positions they stop at with a
+     * static evaluation (open threes, threat parity and center control, see
+     * {@link GameBoard#getEvaluation}), or only tell wins from everything else.
+     * Default true. The transposition table is cleared, as its scores would no
+     * longer match.
+     */
+    public void setEvaluation(boolean evaluation) {
+        stopPondering();
+        this.evaluation = evaluation;
+        resetTable();
+        rootCache.clear();
+    }
+
+    /**
+     * Sets whether MINIMAX searches score a position as a draw as soon as
+     * neither player can make a line any more (see {@link GameBoard#isDrawn()}),
+     * or has enough moves left to, instead of searching on until the board is
+     * full. Default true.
+     */
+    public void setDrawDetection(boolean drawDetection) {
+        stopPondering();
+        this.drawDetection = drawDetection;
+        resetTable();
+        rootCache.clear();
+    }
+
+    /**
+     * Returns a new Search of the given board, with this game's settings.
+     */
+    private Search newSearch(GameBoard board) {
+        Search search = new Search(board, transpositionTable);
+        search.setEvaluation(evaluation);
+        search.setDrawDetection(drawDetection);
+        return search;
+    }
+
+    /**
+     * Replaces the game's own transposition table with a new, empty one (which
+     * is only used while the shared table isn't).
+     * 
+     * @param capacity The maximum amount of entries in the table.
+     */
+    public void setTableCapacity(int capacity) {
+        stopPondering();
+        tableCapacity = capacity;
+        if (!useSharedTable) {
+            transpositionTable = new LocalTranspositionTable(capacity);
+        }
+    }
+
+    /**
+     * Sets whether MINIMAX searches use the transposition table shared by all
+     * the games in this process (see {@link SharedTranspositionTable}) instead
+     * of one of the game's own. Games with the same size and search settings
+     * then use each other's results, e.g. for common openings, and the memory
+     * used is fixed however many games there are. Default false. Turning it off
+     * gives the game a new, empty table of its own.
+     */
+    public void setSharedTable(boolean shared) {
+        stopPondering();
+        useSharedTable = shared;
+        if (shared) {
+            transpositionTable = getSharedTable().withSalt(tableSalt());
+        } else {
+            transpositionTable = new LocalTranspositionTable(tableCapacity);
+        }
+    }
+
+    /**
+     * Sets the amount of entries in the transposition table shared by all games
+     * (16 bytes each, rounded down to a power of 2; the default is 4M). This
+     * only works before any game uses the shared table.
+     * 
+     * @throws IllegalStateException if the shared table is already in use.
+     */
+    public static synchronized void setSharedTableCapacity(int capacity) {
+        if (sharedTable != null) {
+            throw new IllegalStateException("The shared table is already in use.");
+        }
+        sharedTableCapacity = capacity;
+    }
+
+    private static synchronized SharedTranspositionTable getSharedTable() {
+        if (sharedTable == null) {
+            sharedTable = new SharedTranspositionTable(sharedTableCapacity);
+        }
+        return sharedTable;
+    }
+
+    /**
+     * Returns the salt for this game's view of the shared table: the same for
+     * games whose searches give the same scores (the same board size and
+     * search settings), and almost certainly different otherwise.
+     */
+    private long tableSalt() {
+        long salt = 17;
+        for (long setting : new long[] { columns, rows, toWin, evaluation ? 1 : 0, drawDetection ? 1 : 0 }) {
+            salt = (salt ^ setting) * 0x9E3779B97F4A7C15L;
+        }
+        return salt ^ (salt >>> 29);
+    }
+
+    /**
+     * Empties the transposition table when a setting changes what the searches
+     * score, or with the shared table, moves to the view for the new settings.
+     */
+    private void resetTable() {
+        if (useSharedTable) {
+            transpositionTable = getSharedTable().withSalt(tableSalt());
+        } else {
+            transpositionTable.clear();
+        }
+    }
+
+    /**
+     * Sets the maximum amount of finished root searches to remember (0 to turn
+     * the cache off). If the computer has to move in a position it has already
+     * searched deep enough (e.g. after an undo), it plays the remembered move
+     * straight away.
+     * 
+     * @param capacity The maximum amount of positions.
+     */
+    public void setRootCacheCapacity(int capacity) {
+        rootCache.setCapacity(capacity);
+    }
+
+    /**
+     * Returns the result of the search for the last computer move, or null if
+     * there hasn't been one.
+     */
+    public SearchResult getLastSearchResult() {
+        return lastResult;
+    }
+
+    public void playComputer() {
+        if (strategy == Strategy.MONTE_CARLO && MonteCarloSearch.supports(columns, rows)) {
+            playMonteCarlo();
+            return;
+        }
+        long startTime = System.nanoTime();
+        final long rootKey = current.getKey();
+        SearchResult result;
+        long timeElapsedms; // Elapsed time in ms
+        PonderResult ponderHit = takePonderResult();
+        RootCache.Entry cacheHit = (ponderHit == null) ? rootCache.get(rootKey, depth, timeBudgetMillis) : null;
+        if (ponderHit != null) {
+            // The time the pondered search took is used to adjust the depth, as
+            // the search was the same as it would have been now.
+            result = ponderHit.result;
+            timeElapsedms = ponderHit.timeElapsedms;
+        } else if (cacheHit != null) {
+            result = cacheHit.result; // Likewise for a search from earlier in the game.
+            timeElapsedms = cacheHit.timeElapsedms;
+        } else {
+            if (Thread.currentThread().isInterrupted()) {
+                return; // Check the thread is still meant to be active
+            }
+            Search search = newSearch(new GameBoard(current));
+            if (timeBudgetMillis > 0) {
+                result = search.searchIterative(depth, currentTurn, timeBudgetMillis);
+            } else {
+                result = search.search(depth, currentTurn);
+            }
+            timeElapsedms = (System.nanoTime() - startTime) / 1000000;
+        }
+        if (!Thread.currentThread().isInterrupted() && result.isComplete()) { // Make sure the thread is still meant to be active before playing...
+            lastResult = result;
+            rootCache.put(rootKey, result, timeElapsedms, timeBudgetMillis);
+            int bestPlay = result.getBestMove();
+            play(bestPlay);
+            // This is so the depth can be backtracked after the move is undone.
+            computerDepths[history.size() - 1] = (byte) (depth + 1);
+            // Adjust the depth for next time so the computer does basically the maximum
+            // depth it can without overloading the computer.
+            if (adaptiveDepth && depth < (columns * rows - history.size())) { // If the depth isn't already maxed
+                if (timeElapsedms < 1500) { // Less than 1.5 seconds
+                    depth += 1;
+                    if (timeElapsedms < 200) { // Less than 0.2 seconds
+                        depth += 1;
+                    }
+                } else if (timeElapsedms > 3000) { // More than 3 seconds
+                    depth -= 1;
+                    if (timeElapsedms > 7500) { // More than 7.5 seconds
+                        depth -= 1;
+                    }
+                }
+            }
+            if (pondering && winner == 0) {
+                startPondering(result.getPrincipalVariation());
+            }
+        }
+    }
+
+    /**
+     * Plays a computer move using a Monte Carlo Tree Search on all cores.
+     */
+    private void playMonteCarlo() {
+        stopPondering();
+        MonteCarloSearch search = new MonteCarloSearch(new GameBoard(current), monteCarloWorkers, rave);
+        SearchResult result = search.search(currentTurn, monteCarloPlayouts, monteCarloTimeMillis, SEARCH_POOL);
+        if (!Thread.currentThread().isInterrupted() && result.isComplete()) {
+            lastResult = result;
+            play(result.getBestMove());
+            computerDepths[history.size() - 1] = (byte) (depth + 1); // Keeps undo consistent with the minimax moves.
+        }
+    }
+
+    /**
+     * Starts pondering the current position (it must be the player's turn).
+     * 
+     * @param principalVariation The principal variation of the computer's last
+     *                           search. The second move in it is the predicted
+     *                           reply, which is searched first.
+     */
+    private void startPondering(int[] principalVariation) {
+        int[] legal = current.getLegal();
+        int[] replies = new int[legal.length];
+        int k = 0;
+        if (principalVariation.length > 1) {
+            replies[k++] = principalVariation[1];
+        }
+        for (int column : legal) {
+            if (k == 0 || column != replies[0]) {
+                replies[k++] = column;
+            }
+        }
+        ponderResults.clear();
+        ponderer = new Ponderer(new GameBoard(current), replies, depth, 3 - currentTurn);
+        ponderer.start();
+    }
+
+    /**
+     * A search result found while pondering, and how long it took.
+     */
+    private static class PonderResult {
+        final SearchResult result;
+        final long timeElapsedms;
+
+        PonderResult(SearchResult result, long timeElapsedms) {
+            this.result = result;
+            this.timeElapsedms = timeElapsedms;
+        }
+    }
+
+    /**
+     * The background thread that searches the positions after each of the
+     * player's possible replies, in order, storing the finished results in
+     * {@code ponderResults}.
+     */
+    private class Ponderer extends Thread {
+        private final GameBoard board;
+        private final int[] replies;
+        private final int searchDepth;
+        private final int computerDisk;
+        private boolean stopped = false;
+        private boolean finishing = false;
+        private long activeKey;
+        private Search activeSearch;
+
+        Ponderer(GameBoard board, int[] replies, int searchDepth, int computerDisk) {
+            this.board = board;
+            this.replies = replies;
+            this.searchDepth = searchDepth;
+            this.computerDisk = computerDisk;
+            setDaemon(true);
+            setPriority(Thread.MIN_PRIORITY);
+        }
+
+        @Override
+        public void run() {
+            for (int reply : replies) {
+                board.putDisk(3 - computerDisk, reply);
+                if (board.checkWin() == 0) { // Nothing to search if the reply ends the game.
+                    Search search;
+                    synchronized (this) {
+                        if (stopped || finishing) {
+                            return;
+                        }
+                        activeKey = board.getKey();
+                        activeSearch = newSearch(board);
+                        search = activeSearch;
+                    }
+                    long startTime = System.nanoTime();
+                    SearchResult result = search.search(searchDepth, computerDisk);
+                    if (result.isComplete()) {
+                        ponderResults.put(activeKey,
+                                new PonderResult(result, (System.nanoTime() - startTime) / 1000000));
+                    }
+                }
+                board.popDisk(reply);
+            }
+        }
+
+        /**
+         * Stops pondering as soon as possible.
+         */
+        synchronized void halt() {
+            stopped = true;
+            if (activeSearch != null) {
+                activeSearch.stop();
+            }
+        }
+
+        /**
+         * Lets the search of the position with the given key finish (if that is
+         * the one running), but stops everything else.
+         */
+        synchronized void finishOnly(long key) {
+            finishing = true;
+            if (activeSearch != null && activeKey != key) {
+                activeSearch.stop();
+            }
+        }
+    }
+}
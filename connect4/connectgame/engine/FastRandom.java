@@ -0,0 +1,80 @@
+package connectgame.engine;
+
+/**
+ * <h4>FastRandom</h4>
+ * <p>
+ * A small, fast, non thread safe random number generator (xorshift64*), for
+ * random playouts and other places where lots of random numbers are needed.
+ * <p>
+ * Unlike {@link java.util.Random} there is no shared seed to fight over, so
+ * each thread should have its own generator: use {@code current()} for the
+ * calling thread's generator, or {@code split()} to hand out new independent
+ * ones (e.g. one per worker).
+ */
+public class FastRandom {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final ThreadLocal<FastRandom> CURRENT = ThreadLocal
+            .withInitial(() -> new FastRandom(System.nanoTime() ^ Thread.currentThread().getId() * GOLDEN_GAMMA));
+
+    private long state;
+
+    /**
+     * Constructs a new FastRandom from the given seed. Equal seeds give equal
+     * sequences.
+     */
+    public FastRandom(long seed) {
+        state = mix(seed);
+        if (state == 0) {
+            state = GOLDEN_GAMMA; // xorshift must not have a state of 0.
+        }
+    }
+
+    /**
+     * Returns the generator for the calling thread.
+     */
+    public static FastRandom current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns a new generator whose sequence is independent of this one.
+     */
+    public FastRandom split() {
+        return new FastRandom(nextLong() + GOLDEN_GAMMA);
+    }
+
+    /**
+     * Returns a random long.
+     */
+    public long nextLong() {
+        state ^= state >>> 12;
+        state ^= state << 25;
+        state ^= state >>> 27;
+        return state * 0x2545F4914F6CDD1DL;
+    }
+
+    /**
+     * Returns a random int from 0 (inclusive) to bound (exclusive).
+     *
+     * @param bound must be greater than 0.
+     */
+    public int nextInt(int bound) {
+        return (int) (((nextLong() >>> 33) * bound) >>> 31); // 31 random bits, scaled to the bound.
+    }
+
+    /**
+     * Returns a random double from 0 (inclusive) to 1 (exclusive).
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * The SplitMix64 finalizer, to spread similar seeds apart.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,7 +1,7 @@
 package connectgame.engine;
 
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.SplittableRandom;
 
 /**
  * <h4>GameBoard</h4>
@@ -26,6 +26,48 @@ public class GameBoard {
     private int middleColumn;
     private int[] sortedLegalOrder;
 
+    // Position key (Zobrist hashing). The random keys are seeded from the board
+    // dimensions so the same position always has the same key, even across runs.
+    private static final long KEY_SEED = 0x5DEECE66DL;
+    private long[] cellKeys;
+    private long key;
+    private long mirrorKey; // The key of this position reflected left to right.
+    private int diskCount;
+
+    // Bitboards, with the bit {@code column * (rows + 1) + row} set for each space
+    // with that disk (the empty bit above each column stops lines wrapping).
+    // Only kept if the board fits in a long ({@code columns * (rows + 1) <= 64});
+    // bigger boards find wins with the line counts below.
+    private boolean hasBitboard;
+    private long[] diskBits;
+    // The shifts that find lines of toWin bits, for each direction (see lineShifts).
+    private int[][] lineShifts;
+
+    // Winning-line counts (see WinningLines). lineCounts[disk][line] is the
+    // amount of that disk in the line, lineRows[line] the sum of the rows of the
+    // disks in it (so the row of its last empty space is known), openLines[disk]
+    // the amount of lines with none of the other disk in them, and
+    // linesNeeding[disk][k] the amount of those that need k more of the disk
+    // (so linesNeeding[disk][0] is its full lines). Wins are found with these on
+    // boards too big for a single long.
+    private WinningLines winningLines;
+    private int[][] lineCounts;
+    private int[] lineRows;
+    private int[] lineScores; // What each line adds to the evaluation (see lineScore).
+    private int[] lineScoreTable;
+    private int[] openLines;
+    private int[][] linesNeeding;
+
+    // The static evaluation (see getEvaluation), kept up to date with the line
+    // counts. A line with only one disk's disks in it scores for that disk:
+    private static final int THREAT_SCORE = 8; // One space left to fill.
+    private static final int PARITY_SCORE = 2; // Extra if that space is on the disk's good rows.
+    private static final int TWO_SCORE = 2; // Two spaces left to fill.
+    private int evaluation;
+
+    // Scratch space for randomPlayout, so it doesn't need to allocate.
+    private int[] playoutScratch;
+
     /**
      * Initializes an empty ConnectGame GameBoard with the dimensions
      * given and the default winning amount given.
@@ -52,6 +94,74 @@ public class GameBoard {
         }
 
         setSortedLegalOrder();
+        setCellKeys();
+        hasBitboard = columns * (rows + 1) <= 64;
+        diskBits = new long[3];
+        winningLines = new WinningLines(columns, rows, toWin);
+        lineScoreTable = lineScoreTable(toWin);
+        countLines();
+        lineShifts = lineShifts(rows + 1, toWin);
+    }
+
+    /**
+     * Constructs a copy of the given GameBoard. The copy has its own data, so it
+     * can be mutated (for example by a search running in another thread) without
+     * affecting the original.
+     * 
+     * @param other The GameBoard to copy.
+     */
+    public GameBoard(GameBoard other) {
+        this.columns = other.columns;
+        this.rows = other.rows;
+        this.toWin = other.toWin;
+        this.middleColumn = other.middleColumn;
+
+        data = new int[columns][];
+        for (int i = 0; i < columns; i++) {
+            data[i] = other.data[i].clone();
+        }
+        nextDisk = other.nextDisk.clone();
+        sortedLegalOrder = other.sortedLegalOrder; // Never mutated, so it can be shared.
+        cellKeys = other.cellKeys;
+        key = other.key;
+        mirrorKey = other.mirrorKey;
+        diskCount = other.diskCount;
+        hasBitboard = other.hasBitboard;
+        diskBits = other.diskBits.clone();
+        winningLines = other.winningLines; // Never mutated, so it can be shared.
+        lineCounts = new int[3][];
+        for (int i = 0; i < 3; i++) {
+            lineCounts[i] = other.lineCounts[i].clone();
+        }
+        lineRows = other.lineRows.clone();
+        lineScores = other.lineScores.clone();
+        lineScoreTable = other.lineScoreTable; // Never mutated, so it can be shared.
+        openLines = other.openLines.clone();
+        linesNeeding = new int[3][];
+        for (int i = 1; i < 3; i++) {
+            linesNeeding[i] = other.linesNeeding[i].clone();
+        }
+        evaluation = other.evaluation;
+        lineShifts = other.lineShifts; // Never mutated, so it can be shared.
+    }
+
+    /**
+     * This sets the random keys for each (disk, space) pair that make up the
+     * position key. See {@code getKey()}.
+     */
+    private void setCellKeys() {
+        SplittableRandom keyRandom = new SplittableRandom(KEY_SEED ^ (columns * 31L + rows));
+        cellKeys = new long[2 * columns * rows];
+        for (int i = 0; i < cellKeys.length; i++) {
+            cellKeys[i] = keyRandom.nextLong();
+        }
+    }
+
+    /**
+     * Returns the key for the given disk in the given space.
+     */
+    private long cellKey(int disk, int column, int row) {
+        return cellKeys[((disk - 1) * columns + column) * rows + row];
     }
 
     /**
@@ -125,18 +235,142 @@ public class GameBoard {
      * Sets the number of consecutive disks required to win the game in this
      * GameBoard.
      * <p>
-     * <strong>Warning:</strong> The behaviour of the checkWin and (internal)
-     * checkLines
-     * methods could be unexpected if this property is reduced part way through a
-     * game.
-     * This is because there might be winning lines already in place with the new
-     * toWin length
-     * that have not been checked for.
+     * <strong>Warning:</strong> The result of checkWin could be unexpected if
+     * this property is reduced part way through a game. This is because both
+     * players might already have winning lines with the new toWin length, and
+     * RED is always reported first.
      * 
      * @param toWin The new length of a winning line required to win the game.
      */
     public void setToWin(int toWin) {
         this.toWin = toWin;
+        this.lineShifts = lineShifts(rows + 1, toWin);
+        winningLines = new WinningLines(columns, rows, toWin);
+        lineScoreTable = lineScoreTable(toWin);
+        countLines();
+    }
+
+    /**
+     * Sets the winning-line counts (and the evaluation) from scratch, from the
+     * disks on the board.
+     */
+    private void countLines() {
+        final int lineCount = winningLines.lineCount();
+        lineCounts = new int[3][lineCount];
+        lineRows = new int[lineCount];
+        lineScores = new int[lineCount];
+        openLines = new int[] { 0, lineCount, lineCount };
+        linesNeeding = new int[3][toWin + 1];
+        linesNeeding[RED][toWin] = lineCount;
+        linesNeeding[YELLOW][toWin] = lineCount;
+        evaluation = 0;
+        for (int i = 0; i < columns; i++) {
+            for (int j = 0; j < nextDisk[i]; j++) {
+                addToLines(data[i][j], i, j);
+            }
+        }
+    }
+
+    /**
+     * Counts a disk put in the given space in each line through it.
+     */
+    private void addToLines(int disk, int column, int row) {
+        final int[] counts = lineCounts[disk];
+        final int[] otherCounts = lineCounts[3 - disk];
+        final int[] needing = linesNeeding[disk];
+        final int[] lines = winningLines.linesThrough(column, row);
+        int change = 0;
+        for (int line : lines) {
+            final int count = ++counts[line];
+            lineRows[line] += row;
+            final int otherCount = otherCounts[line];
+            if (otherCount == 0) {
+                needing[toWin - count + 1]--;
+                needing[toWin - count]++;
+            }
+            if (count == 1) {
+                // The first of this disk closes the line to the other.
+                openLines[3 - disk]--;
+                linesNeeding[3 - disk][toWin - otherCount]--;
+            }
+            final int score = lineScore(line);
+            change += score - lineScores[line];
+            lineScores[line] = score;
+        }
+        // Center control: a disk is worth the amount of lines through its space.
+        evaluation += change + ((disk == RED) ? lines.length : -lines.length);
+    }
+
+    /**
+     * Takes a disk removed from the given space out of each line through it.
+     */
+    private void removeFromLines(int disk, int column, int row) {
+        final int[] counts = lineCounts[disk];
+        final int[] otherCounts = lineCounts[3 - disk];
+        final int[] needing = linesNeeding[disk];
+        final int[] lines = winningLines.linesThrough(column, row);
+        int change = 0;
+        for (int line : lines) {
+            final int count = counts[line]--;
+            lineRows[line] -= row;
+            final int otherCount = otherCounts[line];
+            if (otherCount == 0) {
+                needing[toWin - count]--;
+                needing[toWin - count + 1]++;
+            }
+            if (count == 1) {
+                openLines[3 - disk]++;
+                linesNeeding[3 - disk][toWin - otherCount]++;
+            }
+            final int score = lineScore(line);
+            change += score - lineScores[line];
+            lineScores[line] = score;
+        }
+        evaluation += change - ((disk == RED) ? lines.length : -lines.length);
+    }
+
+    /**
+     * Returns what the given line adds to the evaluation, for RED (see
+     * {@code lineScoreTable}).
+     */
+    private int lineScore(int line) {
+        final int state = lineCounts[RED][line] * (toWin + 1) + lineCounts[YELLOW][line];
+        final int emptyRows = winningLines.rowSum(line) - lineRows[line];
+        return lineScoreTable[(state << 1) | (emptyRows & 1)];
+    }
+
+    /**
+     * Returns the score of a line for each amount of RED and YELLOW disks in it
+     * ({@code red * (toWin + 1) + yellow}), and the parity of the sum of the rows
+     * of its empty spaces (the low bit), so scoring a line doesn't branch. A
+     * line scores for RED (positive) if only RED has disks in it, for YELLOW
+     * (negative) if only YELLOW does, and otherwise 0.
+     * <p>
+     * A line missing one disk is a threat. RED moves first, so (if every other
+     * column fills up) RED gets the spaces on odd rows counting from 1 and
+     * YELLOW the even ones: a threat on one of those is worth more, as the other
+     * player will be forced to play under it.
+     */
+    private static int[] lineScoreTable(int toWin) {
+        int[] table = new int[(toWin + 1) * (toWin + 1) * 2];
+        for (int red = 0; red <= toWin; red++) {
+            for (int yellow = 0; yellow <= toWin; yellow++) {
+                if ((red == 0) == (yellow == 0)) {
+                    continue; // Empty, or blocked for both.
+                }
+                for (int parity = 0; parity < 2; parity++) {
+                    int score = 0;
+                    if (red + yellow == toWin - 1) {
+                        // Row index 0 is row 1, so RED's good rows have even indices.
+                        score = THREAT_SCORE + (((parity == 0) == (red > 0)) ? PARITY_SCORE : 0);
+                    } else if (red + yellow == toWin - 2) {
+                        score = TWO_SCORE;
+                    }
+                    table[((red * (toWin + 1) + yellow) << 1) | parity] = (red > 0) ? score : -score;
+                }
+            }
+        }
+        return table;
     }
 
     /**
@@ -147,8 +381,15 @@ public class GameBoard {
      *               columns).
      */
     public void putDisk(int disk, int column) {
+        key ^= cellKey(disk, column, nextDisk[column]);
+        mirrorKey ^= cellKey(disk, columns - 1 - column, nextDisk[column]);
+        if (hasBitboard) {
+            diskBits[disk] |= 1L << (column * (rows + 1) + nextDisk[column]);
+        }
+        addToLines(disk, column, nextDisk[column]);
         data[column][nextDisk[column]] = disk;
         nextDisk[column]++;
+        diskCount++;
     }
 
     /**
@@ -157,8 +398,7 @@ public class GameBoard {
      * @param play The play object with the disk and column properties.
      */
     public void putDisk(Play play) {
-        data[play.column][nextDisk[play.column]] = play.disk;
-        nextDisk[play.column]++;
+        putDisk(play.disk, play.column);
     }
 
     /**
@@ -173,6 +413,13 @@ public class GameBoard {
         final int disk = data[column][nextDisk[column] - 1];
         data[column][nextDisk[column] - 1] = BLANK;
         nextDisk[column]--;
+        diskCount--;
+        key ^= cellKey(disk, column, nextDisk[column]);
+        mirrorKey ^= cellKey(disk, columns - 1 - column, nextDisk[column]);
+        if (hasBitboard) {
+            diskBits[disk] &= ~(1L << (column * (rows + 1) + nextDisk[column]));
+        }
+        removeFromLines(disk, column, nextDisk[column]);
         return disk;
     }
 
@@ -185,10 +432,7 @@ public class GameBoard {
      * @throws ArrayIndexOutOfBoundsException if column is empty
      */
     public int popDisk(Play play) {
-        final int disk = data[play.column][nextDisk[play.column] - 1];
-        data[play.column][nextDisk[play.column] - 1] = BLANK;
-        nextDisk[play.column]--;
-        return disk;
+        return popDisk(play.column);
     }
 
     /**
@@ -212,176 +456,394 @@ public class GameBoard {
      */
     public void clearBoard() {
         data = new int[columns][rows];
+        nextDisk = new int[columns];
+        key = 0;
+        mirrorKey = 0;
+        diskCount = 0;
+        diskBits = new long[3];
+        countLines();
     }
 
     /**
+     * Returns a 64 bit key for the current position. Equal positions (on boards of
+     * the same dimensions) always have equal keys, and different positions
+     * have different keys with very high probability. The key is updated
+     * incrementally by {@code putDisk} and {@code popDisk}, so this is O(1).
      * <p>
-     * This method checks all the designated potential winning lines, and returns
-     * RED or YELLOW (1 or 2) if any of them are winning (consecutive disks of
-     * either colour.)
-     * <p>
-     * This method loops through the columns and rows designated by the parameters.
-     * Each pair of (column, row) will be a space on the GameBoard.
-     * This space will be the <em>start</em> of a potential winning line.
-     * Each potential winning line will have a length of {@code winAmount}
-     * and will be going in the direction designated by the {@code columnStep} and
-     * {@code rowStep} parameters. The return value is the Disk (int) of the winner,
-     * 0 if none.
-     * <p>
-     * For example:
-     * {@code checkLines(0, 3, 0, 2, 1, 1, 4)} will check all upwards diagonals
-     * ({@code columnStep = 1, rowStep = 1}) starting in the columns 0 - 2 (3
-     * columns)
-     * and rows 0 - 1 (2 rows).
+     * Note that the key does not include whose turn it is, but in a ConnectGame
+     * this is decided by the number of disks on the board anyway.
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the key the position would have after the disk is put in the
+     * given column (which must not be full), without putting it there.
+     */
+    long getKeyAfter(int disk, int column) {
+        return key ^ cellKey(disk, column, nextDisk[column]);
+    }
+
+    /**
+     * Returns the key of this position reflected left to right (the key
+     * {@code getKey()} would give for the mirror image of the board).
+     */
+    public long getMirrorKey() {
+        return mirrorKey;
+    }
+
+    /**
+     * Returns the same key for a position and its mirror image (the smaller of
+     * {@code getKey()} and {@code getMirrorKey()}), as they are really the same
+     * position.
+     */
+    public long getCanonicalKey() {
+        return Math.min(key, mirrorKey);
+    }
+
+    /**
+     * Returns the number of disks currently on the GameBoard.
+     */
+    public int getDiskCount() {
+        return diskCount;
+    }
+
+    /**
+     * Whether this GameBoard's bitboards fit in a long (see
+     * {@code getBitboard}). This is true if {@code columns * (rows + 1) <= 64}.
+     */
+    public boolean hasBitboard() {
+        return hasBitboard;
+    }
+
+    /**
+     * Returns the bitboard for the given disk: a long with the bit
+     * {@code column * (rows + 1) + row} set for every space holding that disk.
      * 
-     * @param startColumn  The first column to check. Must be a column in the
-     *                     current GameBoard.
-     * @param columnAmount The amount of columns to check. This number, in
-     *                     combination with
-     *                     the {@code startColumn}, {@code columnStep} and
-     *                     {@code winAmount} parameters,
-     *                     must not cause the algorithm to check outside the bounds
-     *                     of the GameBoard.
-     *                     <p>
-     *                     For example, using
-     *                     {@code startColumn = 0, columnAmount = 5, columnStep = 1}
-     *                     and
-     *                     {@code winAmount = 4} will raise an error if the
-     *                     GameBoard has less than 7 columns.
-     * @param startRow     The first row to check. Must be a row in the current
-     *                     GameBoard.
-     * @param rowAmount    The amount of rows to check. This number, in combination
-     *                     with
-     *                     the {@code startRow}, {@code rowStep} and
-     *                     {@code winAmount} parameters,
-     *                     must not cause the algorithm to check outside the bounds
-     *                     of the GameBoard.
-     *                     <p>
-     *                     For example, using
-     *                     {@code startRow = 0, rowAmount = 4, rowStep = 1} and
-     *                     {@code winAmount = 4} will raise an error if the
-     *                     GameBoard has less than 6 rows.
-     * @param columnStep   The amount of columns to advance for each space in the
-     *                     potential winning line.
-     * @param rowStep      The amount of rows to advance (in an upwards direction)
-     *                     for each space in the potential winning line.
-     *                     <p>
-     *                     For example if {@code columnStep = 1} and
-     *                     {@code rowStep = 1} the potential
-     *                     winning lines will be in an upwards diagonal direction.
-     *                     Similarly, if {@code columnStep = 0} and
-     *                     {@code rowStep = 1} the potential
-     *                     winning lines will be vertical.
-     * @param winAmount    The amount of spaces to check for each of the potential
-     *                     winning lines. All of the spaces in the winning line must
-     *                     be either RED or YELLOW (1 or 2)
-     *                     to return a non-zero value.
-     * @return 0 if no winning lines are found, RED (1) if red was found to be the
-     *         winner,
-     *         YELLOW (2) if yellow was found to be the winner.
-     * @throws ArrayIndexOutOfBoundsException if the parameters given cause the
-     *                                        algorithm to
-     *                                        check a space on the GameBoard that is
-     *                                        out of bounds.
-     * @implNote This method assumes there is at most 1 winning line. It returns as
-     *           soon as
-     *           a winning line is found, and returns 0 if all potential winning
-     *           lines have been checked
-     *           and none of them are winning for either player.
-     */
-    private int checkLines(int startColumn, int columnAmount, int startRow,
-            int rowAmount, int columnStep, int rowStep, int winAmount) {
-        int n; // This variable basically serves as a 'flag' for which disks are in the
-               // potential winning lines.
-        final int redWin = 1;
-        final int yellowWin = (int) Math.ceil(Math.pow(YELLOW, winAmount) - 0.1);
-        // subtract 0.1 to make sure float inaccuracy isn't a problem.
-
-        for (int i = startColumn; i < startColumn + columnAmount; i++) {
-            // Loops through the columns.
-            for (int j = startRow; j < startRow + rowAmount; j++) {
-                // Loops through the rows
-                // Each pair of (column, row) will be a space on the GameBoard
-                // designating the start of a potential win position.
-                n = 1;
-                for (int k = 0; k < winAmount; k++) {
-                    // Loops through the spaces in the potential win position,
-                    // multiplying n by the value in each one.
-                    n *= data[i + (k * columnStep)][j + (k * rowStep)];
-                }
-                if (n == 0) { // n is 0, which means at least 1 of the spaces was blank.
-                    continue;
-                }
-                if (n == redWin) {
-                    return RED;
-                }
-                if (n == yellowWin) {
-                    return YELLOW;
-                }
-            }
+     * @param disk RED or YELLOW (1 or 2).
+     * @throws UnsupportedOperationException if this board is too big for a
+     *                                       bitboard (see {@code hasBitboard()}).
+     */
+    public long getBitboard(int disk) {
+        if (!hasBitboard) {
+            throw new UnsupportedOperationException("This GameBoard is too big for a bitboard.");
         }
-        // If no winning lines have been found:
-        return 0;
+        return diskBits[disk];
     }
 
     /**
      * Checks if either player has won in the current position.
      * <p>
      * This means they have a line of consecutive Disks with length {@code toWin}
-     * specified in the constructor.
+     * specified in the constructor. This takes a few operations however big the
+     * board is: the lines are found on the bitboard (see {@code lineShifts}) if
+     * it fits in a long, and bigger boards keep a count of the disks in each
+     * line as they are played (see {@link WinningLines}).
      * 
      * @return RED or YELLOW (1 or 2) if they have won, 3 if the position has ended
      *         in a draw, otherwise 0.
      */
     public int checkWin() {
-        int winPlayer;
+        if (hasLine(RED)) {
+            return RED;
+        }
+        if (hasLine(YELLOW)) {
+            return YELLOW;
+        }
+        // If no one has won:
+        return (diskCount == rows * columns) ? 3 : 0;
+    }
+
+    /**
+     * Whether the given disk has a winning line. This is half the work of
+     * {@code checkWin()} when only one player can have won (e.g. the one who
+     * just moved).
+     * 
+     * @param disk RED or YELLOW (1 or 2).
+     */
+    public boolean hasWon(int disk) {
+        return hasLine(disk);
+    }
 
-        // Horizontal Check
-        winPlayer = checkLines(0, columns - toWin + 1, 0, rows, 1, 0, toWin);
-        if (winPlayer != 0) {
-            return winPlayer;
+    /**
+     * Whether the given disk has a winning line.
+     */
+    private boolean hasLine(int disk) {
+        if (hasBitboard) {
+            return hasLine(diskBits[disk], lineShifts);
         }
+        return linesNeeding[disk][0] > 0; // Kept up to date by putDisk and popDisk.
+    }
+
+    /**
+     * Returns the amount of winning lines that the given disk could still make:
+     * the lines with none of the other disk in them (whether or not they have
+     * any of this disk yet).
+     * 
+     * @param disk RED or YELLOW (1 or 2).
+     */
+    public int getOpenLines(int disk) {
+        return openLines[disk]; // Kept up to date by putDisk and popDisk.
+    }
 
-        // Vertical Check
-        winPlayer = checkLines(0, columns, 0, rows - toWin + 1, 0, 1, toWin);
-        if (winPlayer != 0) {
-            return winPlayer;
+    /**
+     * Returns the fewest disks the given disk still needs to complete one of
+     * its open lines (see {@code getOpenLines}): 0 if it has already won, or
+     * {@code Integer.MAX_VALUE} if it has no open lines. If that is more than
+     * the amount of moves it has left, it can't win any more. This is O(toWin).
+     * 
+     * @param disk RED or YELLOW (1 or 2).
+     */
+    public int getDisksNeeded(int disk) {
+        final int[] needing = linesNeeding[disk];
+        for (int k = 0; k <= toWin; k++) {
+            if (needing[k] > 0) {
+                return k;
+            }
         }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Whether neither player can make a winning line any more (every line has
+     * disks of both in it), so the game can only end in a draw however it is
+     * played, even though the board isn't full. This is O(1), as the open lines
+     * are kept up to date by {@code putDisk} and {@code popDisk}.
+     */
+    public boolean isDrawn() {
+        return openLines[RED] == 0 && openLines[YELLOW] == 0;
+    }
 
-        // Upward Diagonals Check
-        winPlayer = checkLines(0, columns - toWin + 1, 0, rows - toWin + 1, 1, 1, toWin);
-        if (winPlayer != 0) {
-            return winPlayer;
+    /**
+     * Returns the amount of winning lines through the given space that the
+     * given disk could still make (see {@code getOpenLines}).
+     * 
+     * @param column A column in the GameBoard.
+     * @param row    A row in the GameBoard.
+     * @param disk   RED or YELLOW (1 or 2).
+     */
+    public int countOpenLines(int column, int row, int disk) {
+        int count = 0;
+        final int[] otherCounts = lineCounts[3 - disk];
+        for (int line : winningLines.linesThrough(column, row)) {
+            if (otherCounts[line] == 0) {
+                count++;
+            }
         }
+        return count;
+    }
+
+    /**
+     * Returns a static evaluation of the position for the given disk: positive
+     * if it looks better for that disk, negative if it looks worse. It scores
+     * open threes (lines missing one disk, with none of the other player's in
+     * them), more so on the rows that suit the player who has them (see
+     * {@code lineScore}), open twos, and center control (each disk is worth the
+     * amount of winning lines through its space). It ignores whose turn it is,
+     * and whether anyone has already won.
+     * <p>
+     * This is kept up to date by {@code putDisk} and {@code popDisk}, so it is
+     * O(1).
+     * 
+     * @param disk RED or YELLOW (1 or 2).
+     */
+    public int getEvaluation(int disk) {
+        return (disk == RED) ? evaluation : -evaluation;
+    }
 
-        // Downward Diagonals Check
-        winPlayer = checkLines(0, columns - toWin + 1, toWin - 1, rows - toWin + 1, 1, -1, toWin);
-        if (winPlayer != 0) {
-            return winPlayer;
+    /**
+     * Plays random (legal) moves, starting with the given disk, until the game
+     * ends, and returns the result. The GameBoard is left as it was.
+     * <p>
+     * This does not allocate anything (after the first call), and only checks
+     * for the win of the disk just played, so it is much faster than a loop of
+     * {@code getLegal()}, {@code putDisk} and {@code checkWin()}. Use a
+     * FastRandom per thread (e.g. {@code FastRandom.current()}).
+     * 
+     * @param disk   The disk to move first (RED or YELLOW). The current position
+     *               must not already be won.
+     * @param random The random number generator to use.
+     * @return RED or YELLOW (1 or 2) for the winner, or 3 for a draw.
+     */
+    public int randomPlayout(int disk, FastRandom random) {
+        if (playoutScratch == null) {
+            playoutScratch = new int[Math.max(2 * columns, rows * columns)];
+        }
+        if (hasBitboard) {
+            return bitboardPlayout(disk, random);
+        }
+        // Play on the data array, remembering the moves so they can be undone.
+        final int[] moves = playoutScratch;
+        final int cells = rows * columns;
+        int moveCount = 0;
+        int result = (diskCount == cells) ? 3 : 0;
+        while (result == 0) {
+            int column = getRandomLegal(random);
+            putDisk(disk, column);
+            moves[moveCount++] = column;
+            if (hasLine(disk)) {
+                result = disk;
+            } else if (diskCount == cells) {
+                result = 3;
+            }
+            disk = 3 - disk;
+        }
+        while (moveCount > 0) {
+            popDisk(moves[--moveCount]);
         }
+        return result;
+    }
 
-        // If no one has won:
-        if (isFull()) {
+    /**
+     * The bitboard version of {@code randomPlayout}. It works on local copies of
+     * the bitboards, so the GameBoard itself is never changed.
+     */
+    private int bitboardPlayout(int disk, FastRandom random) {
+        final int height = rows + 1;
+        final int cells = rows * columns;
+        final int[] heights = playoutScratch;
+        final int[] legal = playoutScratch;
+        System.arraycopy(nextDisk, 0, heights, columns, columns); // heights live in [columns, 2 * columns)
+        long red = diskBits[RED];
+        long yellow = diskBits[YELLOW];
+        int count = diskCount;
+        if (count == cells) {
             return 3;
         }
-        return 0;
+        while (true) {
+            int n = 0;
+            for (int i = 0; i < columns; i++) {
+                if (heights[columns + i] < rows) {
+                    legal[n++] = i;
+                }
+            }
+            final int column = legal[random.nextInt(n)];
+            final long bit = 1L << (column * height + heights[columns + column]);
+            heights[columns + column]++;
+            count++;
+            if (disk == RED) {
+                red |= bit;
+                if (hasLine(red, lineShifts)) {
+                    return RED;
+                }
+            } else {
+                yellow |= bit;
+                if (hasLine(yellow, lineShifts)) {
+                    return YELLOW;
+                }
+            }
+            if (count == cells) {
+                return 3;
+            }
+            disk = 3 - disk;
+        }
+    }
+
+    /**
+     * Returns a random legal column, without allocating (unlike
+     * {@code getLegal()}).
+     * 
+     * @param random The random number generator to use.
+     * @return A column that is not full.
+     * @throws IllegalStateException if every column is full.
+     */
+    public int getRandomLegal(FastRandom random) {
+        if (diskCount == rows * columns) {
+            throw new IllegalStateException("There are no legal columns.");
+        }
+        int legalCount = 0;
+        for (int i = 0; i < columns; i++) {
+            if (nextDisk[i] < rows) {
+                legalCount++;
+            }
+        }
+        int k = random.nextInt(legalCount);
+        for (int i = 0; i < columns; i++) {
+            if (nextDisk[i] < rows && k-- == 0) {
+                return i;
+            }
+        }
+        return -1; // Never happens, as there is at least 1 legal column.
+    }
+
+    /**
+     * Returns the shifts that find lines of {@code toWin} bits on a bitboard with
+     * {@code height} bits per column, for each of the 4 directions (up, across
+     * and both diagonals, which are 1, height, height + 1 and height - 1 bits
+     * apart). Applying {@code bits &= bits >>> shift} for each shift of a
+     * direction leaves a bit set at the start of each line in that direction.
+     * <p>
+     * The shifts double the length of line found each time, then make up the
+     * rest with one overlapping shift, so 4 in a row takes 2 shifts and 5 in a
+     * row takes 3 (instead of 3 and 4 checking one disk at a time).
+     */
+    static int[][] lineShifts(int height, int toWin) {
+        final int[] directions = { 1, height, height + 1, height - 1 };
+        int steps = 0;
+        int length = 1;
+        for (; length * 2 <= toWin; length *= 2) {
+            steps++;
+        }
+        final int rest = toWin - length;
+        int[][] shifts = new int[directions.length][steps + (rest > 0 ? 1 : 0)];
+        for (int d = 0; d < directions.length; d++) {
+            for (int i = 0; i < steps; i++) {
+                shifts[d][i] = directions[d] << i;
+            }
+            if (rest > 0) {
+                shifts[d][steps] = directions[d] * rest;
+            }
+        }
+        return shifts;
+    }
+
+    /**
+     * Whether a bitboard (with an empty bit above each column) has a line, using
+     * the shifts from {@code lineShifts}.
+     */
+    static boolean hasLine(long bits, int[][] lineShifts) {
+        for (int[] shifts : lineShifts) {
+            long line = bits;
+            for (int shift : shifts) {
+                line &= line >>> shift;
+            }
+            if (line != 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * Returns an int[] will all the legal moves in the current position, sorted by
      * their distance from the center.
-     * 
-     * Note: This could probably be made more efficient...
      */
     public int[] getLegal() {
-        LinkedList<Integer> legalPlays = new LinkedList<>();
-
+        // Count first, so the array is the only allocation (this is called at
+        // every node of a search).
+        int count = 0;
+        for (int i = 0; i < columns; i++) {
+            if (nextDisk[i] < rows) {
+                count++;
+            }
+        }
+        int[] legalPlays = new int[count];
+        int k = 0;
         for (int i : sortedLegalOrder) {
             if (nextDisk[i] < rows) {
-                legalPlays.add(i);
+                legalPlays[k++] = i;
             }
         }
-        return legalPlays.stream().mapToInt(i -> i).toArray();
+        return legalPlays;
+    }
+
+    /**
+     * Returns every column, sorted by distance from the center (the order used by
+     * {@code getLegal()}).
+     */
+    public int[] getLegalOrder() {
+        return sortedLegalOrder.clone();
     }
 
     /**
@@ -0,0 +1,68 @@
+package connectgame.engine;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <h4>LocalTranspositionTable</h4>
+ * <p>
+ * A {@link TranspositionTable} for one game (or tool), in a hash map that only
+ * takes memory for the entries it has, up to a capacity. When it is full it is
+ * cleared.
+ * <p>
+ * This table is safe to use from multiple threads.
+ */
+class LocalTranspositionTable extends TranspositionTable {
+    private final ConcurrentHashMap<Long, Long> table;
+    private final int capacity;
+
+    /**
+     * Constructs an empty LocalTranspositionTable.
+     *
+     * @param capacity The maximum amount of entries. When the table is full it is
+     *                 cleared, so this is a simple cap on memory use.
+     */
+    LocalTranspositionTable(int capacity) {
+        this.capacity = capacity;
+        this.table = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the entry for the position with the given key, or MISS if none.
+     */
+    @Override
+    long get(long key) {
+        Long entry = table.get(key);
+        return (entry != null) ? entry : MISS;
+    }
+
+    /**
+     * Stores a score for the position with the given key. An existing entry is
+     * only replaced if the new one was searched at least as deep.
+     */
+    @Override
+    void put(long key, int score, int depth, int type, int bestMove) {
+        if (table.size() >= capacity) {
+            table.clear();
+        }
+        Long old = table.get(key);
+        if (old == null || depth(old) <= depth) {
+            table.put(key, pack(score, depth, type, bestMove));
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    @Override
+    void clear() {
+        table.clear();
+    }
+
+    /**
+     * Returns the amount of entries currently in the table.
+     */
+    @Override
+    int size() {
+        return table.size();
+    }
+}
@@ -0,0 +1,456 @@
+package connectgame.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <h4>MonteCarloSearch</h4>
+ * <p>
+ * A Monte Carlo Tree Search (UCT, with optional RAVE) that decides a move by
+ * playing lots of random games (playouts) from the current position.
+ * <p>
+ * The search is root parallel: each worker grows its own tree from the same
+ * root with its own random number generator, so the workers never have to
+ * wait for each other, and their root statistics are added together at the
+ * end. Each worker plays its playouts on a bitboard, so a playout allocates
+ * nothing. The search is 'anytime': it can be stopped at any point (or given a
+ * time budget) and will still return the best move found so far.
+ * <p>
+ * The bitboard needs {@code columns * (rows + 1) <= 64}, which covers boards
+ * up to 8x7.
+ */
+public class MonteCarloSearch {
+    private static final double EXPLORATION = 1.4; // The UCT exploration constant.
+    private static final double RAVE_EQUIVALENCE = 300; // Visits at which RAVE and UCT values weigh the same.
+    private static final int INITIAL_NODES = 1 << 14;
+    private static final int MAX_NODES = 1 << 20; // Per worker. Leaves past this are just played out.
+    private static final int CHECK_INTERVAL = 63; // How often (in playouts) to check the time.
+
+    private final GameBoard root;
+    private final int workerCount;
+    private final boolean rave;
+    private volatile boolean stopped = false;
+
+    /**
+     * Constructs a new MonteCarloSearch of the given position.
+     *
+     * @param board       The position to search. It is not mutated.
+     * @param workerCount The amount of workers (threads) to use.
+     * @param rave        Whether to use RAVE (all-moves-as-first) values as well
+     *                    as UCT.
+     * @throws IllegalArgumentException if the board is too big for a 64 bit
+     *                                  bitboard.
+     */
+    public MonteCarloSearch(GameBoard board, int workerCount, boolean rave) {
+        if (!supports(board.columns(), board.rows())) {
+            throw new IllegalArgumentException("MonteCarloSearch supports boards with columns * (rows + 1) <= 64.");
+        }
+        this.root = board;
+        this.workerCount = Math.max(1, workerCount);
+        this.rave = rave;
+    }
+
+    /**
+     * Returns whether boards of the given size fit in the bitboard.
+     */
+    public static boolean supports(int columns, int rows) {
+        return columns * (rows + 1) <= 64;
+    }
+
+    /**
+     * Stops the search as soon as possible. Safe to call from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Searches the position and returns the most visited move for the given
+     * disk.
+     *
+     * @param disk       The disk to move (RED or YELLOW).
+     * @param playouts   The total amount of playouts (split between the workers),
+     *                   or 0 for no limit.
+     * @param timeMillis The time budget in milliseconds, or 0 for no limit. At
+     *                   least one of the limits must be given.
+     * @param executor   The executor to run the workers on.
+     * @return The best move. The score is the expected result from -99 (always
+     *         loses) to 99 (always wins), and nodes is the amount of playouts.
+     *         The result is incomplete if the search was stopped or the thread
+     *         was interrupted.
+     */
+    public SearchResult search(int disk, long playouts, long timeMillis, ExecutorService executor) {
+        final long deadline = (timeMillis > 0) ? System.nanoTime() + timeMillis * 1000000 : Long.MAX_VALUE;
+        final long workerPlayouts = (playouts > 0) ? Math.max(1, playouts / workerCount) : Long.MAX_VALUE;
+        final FastRandom random = FastRandom.current();
+        Worker[] workers = new Worker[workerCount];
+        Future<?>[] tasks = new Future<?>[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(root, disk, rave, random.split());
+            final Worker worker = workers[i];
+            tasks[i] = executor.submit(() -> worker.run(workerPlayouts, deadline));
+        }
+        boolean complete = true;
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            stopped = true;
+            complete = false;
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A Monte Carlo worker failed.", e.getCause());
+        }
+        complete = complete && !stopped;
+        return combine(workers, complete);
+    }
+
+    /**
+     * Adds up the root statistics of all the workers and picks the most visited
+     * move.
+     */
+    private SearchResult combine(Worker[] workers, boolean complete) {
+        final int columns = root.columns();
+        long[] visits = new long[columns];
+        double[] wins = new double[columns];
+        long playouts = 0;
+        for (Worker worker : workers) {
+            playouts += worker.playouts;
+            worker.addRootStatistics(visits, wins);
+        }
+        int bestMove = -1;
+        for (int column : root.getLegal()) {
+            if (bestMove == -1 || visits[column] > visits[bestMove]) {
+                bestMove = column;
+            }
+        }
+        int score = 0;
+        if (bestMove != -1 && visits[bestMove] > 0) {
+            score = (int) Math.round((2 * wins[bestMove] / visits[bestMove] - 1) * (Search.WIN - 1));
+        }
+        int[] pv = workers[0].principalVariation();
+        if (pv.length == 0 || pv[0] != bestMove) {
+            pv = new int[] { bestMove };
+        }
+        return new SearchResult(bestMove, score, pv.length, playouts, pv, complete);
+    }
+
+    /**
+     * A single worker, with its own tree, bitboard and random number generator.
+     * The tree is stored in arrays (one entry per node) so that it is compact and
+     * grows without creating an object per node.
+     */
+    private class Worker {
+        private final int columns;
+        private final int rows;
+        private final int height; // rows + 1, the bits per column in the bitboard.
+        private final int[][] lineShifts; // For finding lines on the bitboard.
+        private final int cells;
+        private final int rootDisk;
+        private final boolean rave;
+
+        // The bitboard. disks[disk] has a bit set for each space with that disk.
+        private final long[] rootDisks = new long[3];
+        private final int[] rootHeights;
+        private final int rootCount;
+        private final long[] disks = new long[3];
+        private final int[] heights;
+        private int count;
+        private final int[] legal;
+        private final int[] order; // Columns sorted by distance from the center.
+
+        private final FastRandom random;
+        private long playouts = 0;
+
+        // The tree. Node 0 is the root.
+        private int size = 1;
+        private int[] firstChild;
+        private byte[] childCount;
+        private byte[] move;
+        private int[] visits;
+        private float[] wins; // For the player who moved into the node.
+        private int[] raveVisits;
+        private float[] raveWins;
+
+        // The current iteration: the nodes visited and every move played.
+        private final int[] path;
+        private final int[] moves;
+
+        Worker(GameBoard board, int disk, boolean rave, FastRandom random) {
+            this.columns = board.columns();
+            this.rows = board.rows();
+            this.height = rows + 1;
+            this.lineShifts = GameBoard.lineShifts(height, board.toWin());
+            this.cells = columns * rows;
+            this.rootDisk = disk;
+            this.rave = rave;
+            this.random = random;
+
+            rootHeights = board.getNextDiskIndices().clone();
+            for (int i = 0; i < columns; i++) {
+                for (int j = 0; j < rootHeights[i]; j++) {
+                    rootDisks[board.get(i, j)] |= 1L << (i * height + j);
+                }
+            }
+            rootCount = board.getDiskCount();
+            heights = new int[columns];
+            legal = new int[columns];
+            order = board.getLegalOrder();
+            path = new int[cells + 2];
+            moves = new int[cells + 2];
+
+            firstChild = new int[INITIAL_NODES];
+            childCount = new byte[INITIAL_NODES];
+            move = new byte[INITIAL_NODES];
+            visits = new int[INITIAL_NODES];
+            wins = new float[INITIAL_NODES];
+            raveVisits = new int[INITIAL_NODES];
+            raveWins = new float[INITIAL_NODES];
+            firstChild[0] = -1;
+            move[0] = -1;
+        }
+
+        /**
+         * Runs iterations until the playout limit or deadline is reached, or the
+         * search is stopped.
+         */
+        void run(long maxPlayouts, long deadline) {
+            while (playouts < maxPlayouts && !stopped) {
+                iterate();
+                playouts++;
+                if ((playouts & CHECK_INTERVAL) == 0
+                        && (System.nanoTime() >= deadline || Thread.currentThread().isInterrupted())) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * One iteration: select a path down the tree, expand it, play a random
+         * game from the end of it, and update the statistics along the path.
+         */
+        private void iterate() {
+            // Reset the bitboard to the root position.
+            disks[1] = rootDisks[1];
+            disks[2] = rootDisks[2];
+            System.arraycopy(rootHeights, 0, heights, 0, columns);
+            count = rootCount;
+
+            int node = 0;
+            int disk = rootDisk;
+            int pathLength = 1;
+            int moveCount = 0;
+            int result = 0;
+            path[0] = 0;
+            while (result == 0) {
+                if (firstChild[node] == -1) {
+                    if ((visits[node] == 0 && node != 0) || !expand(node)) {
+                        break; // A new leaf: play it out.
+                    }
+                }
+                node = select(node);
+                result = play(move[node], disk);
+                path[pathLength++] = node;
+                moves[moveCount++] = move[node];
+                disk = 3 - disk;
+            }
+            if (result == 0) {
+                // Random playout.
+                while (result == 0) {
+                    int n = 0;
+                    for (int i = 0; i < columns; i++) {
+                        if (heights[i] < rows) {
+                            legal[n++] = i;
+                        }
+                    }
+                    int column = legal[random.nextInt(n)];
+                    result = play(column, disk);
+                    moves[moveCount++] = column;
+                    disk = 3 - disk;
+                }
+            }
+            backpropagate(pathLength, moveCount, result);
+        }
+
+        /**
+         * Updates the statistics of every node on the path (and the RAVE
+         * statistics of their children) with the result of the game.
+         */
+        private void backpropagate(int pathLength, int moveCount, int result) {
+            // playedBy[disk] has a bit for each column that disk played into from
+            // the current point in the game onwards.
+            int playedByRed = 0;
+            int playedByYellow = 0;
+            for (int j = moveCount - 1; j >= pathLength - 1; j--) {
+                // Move j was played by the root disk if j is even.
+                if ((j % 2 == 0) == (rootDisk == GameBoard.RED)) {
+                    playedByRed |= 1 << moves[j];
+                } else {
+                    playedByYellow |= 1 << moves[j];
+                }
+            }
+            for (int i = pathLength - 1; i >= 0; i--) {
+                if (i < pathLength - 1) {
+                    if ((i % 2 == 0) == (rootDisk == GameBoard.RED)) {
+                        playedByRed |= 1 << moves[i];
+                    } else {
+                        playedByYellow |= 1 << moves[i];
+                    }
+                }
+                final int node = path[i];
+                final int toMove = (i % 2 == 0) ? rootDisk : 3 - rootDisk;
+                visits[node]++;
+                wins[node] += value(result, 3 - toMove);
+                if (rave && firstChild[node] != -1) {
+                    final int played = (toMove == GameBoard.RED) ? playedByRed : playedByYellow;
+                    final float raveValue = value(result, toMove);
+                    for (int c = firstChild[node]; c < firstChild[node] + childCount[node]; c++) {
+                        if ((played & (1 << move[c])) != 0) {
+                            raveVisits[c]++;
+                            raveWins[c] += raveValue;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the value of a game result for the given disk: 1 for a win, 0.5
+         * for a draw, 0 for a loss.
+         */
+        private float value(int result, int disk) {
+            if (result == disk) {
+                return 1;
+            }
+            return (result == 3) ? 0.5f : 0;
+        }
+
+        /**
+         * Adds children for every legal move to the node, in center-first order.
+         *
+         * @return false if there is no room left in the tree.
+         */
+        private boolean expand(int node) {
+            int n = 0;
+            for (int column : order) {
+                if (heights[column] < rows) {
+                    legal[n++] = column;
+                }
+            }
+            if (size + n > firstChild.length && !grow(size + n)) {
+                return false;
+            }
+            firstChild[node] = size;
+            childCount[node] = (byte) n;
+            for (int i = 0; i < n; i++) {
+                firstChild[size] = -1;
+                move[size] = (byte) legal[i];
+                size++;
+            }
+            return true;
+        }
+
+        /**
+         * Grows the tree arrays to fit at least {@code needed} nodes.
+         *
+         * @return false if that would be more than MAX_NODES.
+         */
+        private boolean grow(int needed) {
+            if (needed > MAX_NODES) {
+                return false;
+            }
+            int capacity = Math.min(MAX_NODES, Math.max(needed, firstChild.length * 2));
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            childCount = Arrays.copyOf(childCount, capacity);
+            move = Arrays.copyOf(move, capacity);
+            visits = Arrays.copyOf(visits, capacity);
+            wins = Arrays.copyOf(wins, capacity);
+            raveVisits = Arrays.copyOf(raveVisits, capacity);
+            raveWins = Arrays.copyOf(raveWins, capacity);
+            return true;
+        }
+
+        /**
+         * Returns the child of the node with the highest UCT (or UCT-RAVE) value.
+         * Unvisited children are always picked first.
+         */
+        private int select(int node) {
+            final double logVisits = Math.log(visits[node] + 1);
+            int best = firstChild[node];
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int c = firstChild[node]; c < firstChild[node] + childCount[node]; c++) {
+                if (visits[c] == 0) {
+                    return c;
+                }
+                double q = wins[c] / visits[c];
+                if (rave && raveVisits[c] > 0) {
+                    double beta = raveVisits[c]
+                            / (raveVisits[c] + visits[c] + visits[c] * raveVisits[c] / RAVE_EQUIVALENCE);
+                    q = (1 - beta) * q + beta * (raveWins[c] / raveVisits[c]);
+                }
+                double value = q + EXPLORATION * Math.sqrt(logVisits / visits[c]);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Plays a disk into a column on the bitboard.
+         *
+         * @return The disk if it has won, 3 if the game is a draw, otherwise 0.
+         */
+        private int play(int column, int disk) {
+            disks[disk] |= 1L << (column * height + heights[column]);
+            heights[column]++;
+            count++;
+            if (GameBoard.hasLine(disks[disk], lineShifts)) {
+                return disk;
+            }
+            return (count == cells) ? 3 : 0;
+        }
+
+        /**
+         * Adds the visits and wins of each root move to the given arrays (indexed
+         * by column).
+         */
+        void addRootStatistics(long[] rootVisits, double[] rootWins) {
+            if (firstChild[0] == -1) {
+                return;
+            }
+            for (int c = firstChild[0]; c < firstChild[0] + childCount[0]; c++) {
+                rootVisits[move[c]] += visits[c];
+                rootWins[move[c]] += wins[c];
+            }
+        }
+
+        /**
+         * Returns the line of play found by following the most visited child from
+         * the root.
+         */
+        int[] principalVariation() {
+            int[] pv = new int[cells];
+            int length = 0;
+            int node = 0;
+            while (firstChild[node] != -1 && length < cells) {
+                int best = -1;
+                for (int c = firstChild[node]; c < firstChild[node] + childCount[node]; c++) {
+                    if (best == -1 || visits[c] > visits[best]) {
+                        best = c;
+                    }
+                }
+                if (visits[best] == 0) {
+                    break;
+                }
+                pv[length++] = move[best];
+                node = best;
+            }
+            return Arrays.copyOf(pv, length);
+        }
+    }
+}
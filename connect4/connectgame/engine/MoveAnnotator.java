@@ -0,0 +1,178 @@
+package connectgame.engine;
+
+/**
+ * <h4>MoveAnnotator</h4>
+ * <p>
+ * Replays a game move by move on its own GameBoard and scores each move
+ * against the best move the engine can find, so that blunders (moves that
+ * throw away a win or a draw) can be flagged.
+ * <p>
+ * Each move gets a bounded budget: an iterative deepening search of the
+ * position up to a maximum depth or time, then (if a different move was
+ * played) a search of the played move at the same depth, with the same time
+ * limit. That second search is usually quick, as it reuses the transposition
+ * table of the first. A MoveAnnotator
+ * keeps its transposition table from game to game, as games share a lot of
+ * positions, so one annotator per thread should be reused for many games. It
+ * is not thread safe.
+ */
+public class MoveAnnotator {
+    private final GameBoard board;
+    private final TranspositionTable table;
+    private int disk = GameBoard.RED;
+
+    /**
+     * The result of annotating one move.
+     */
+    public static class Annotation {
+        int column;
+        int bestMove;
+        int score;
+        int bestScore;
+        int depth;
+        long nodes;
+        boolean complete;
+
+        /**
+         * Returns the column played.
+         */
+        public int getColumn() {
+            return column;
+        }
+
+        /**
+         * Returns the best column found (which may be the one played).
+         */
+        public int getBestMove() {
+            return bestMove;
+        }
+
+        /**
+         * Returns the score of the move played, for the player who played it.
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Returns the score of the best move, for the player who played.
+         */
+        public int getBestScore() {
+            return bestScore;
+        }
+
+        /**
+         * Returns the depth both moves were searched to.
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns the amount of positions visited.
+         */
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * Returns whether the scores can be trusted (false if the budget ran out
+         * before the first depth was finished).
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * Returns whether the move played loses a win or a draw that the best
+         * move keeps (a certain win, draw-or-unknown, or certain loss, from
+         * best to worst).
+         */
+        public boolean isBlunder() {
+            return complete && outcome(score) < outcome(bestScore);
+        }
+
+        private static int outcome(int score) {
+            return (score > Search.WIN) ? 1 : (score < -Search.WIN) ? -1 : 0;
+        }
+    }
+
+    /**
+     * Constructs a new MoveAnnotator for games of the given size, starting at
+     * the empty board.
+     *
+     * @param tableCapacity The maximum amount of transposition table entries.
+     */
+    public MoveAnnotator(int columns, int rows, int toWin, int tableCapacity) {
+        board = new GameBoard(columns, rows, toWin);
+        table = new LocalTranspositionTable(tableCapacity);
+    }
+
+    /**
+     * Goes back to the empty board, for a new game. The transposition table is
+     * kept.
+     */
+    public void reset() {
+        board.clearBoard();
+        disk = GameBoard.RED;
+    }
+
+    /**
+     * Annotates the next move of the game, then plays it.
+     *
+     * @param column     The column played.
+     * @param maxDepth   The maximum depth to search (as in
+     *                   {@link Search#search(int, int)}).
+     * @param timeMillis The maximum time for each search of the move.
+     * @return The annotation.
+     * @throws IllegalArgumentException if the move is illegal or the game is
+     *                                  already over.
+     */
+    public Annotation annotate(int column, int maxDepth, long timeMillis) {
+        if (column < 0 || column >= board.columns() || board.getNextDiskIndices()[column] >= board.rows()
+                || board.checkWin() != 0) {
+            throw new IllegalArgumentException("Illegal move in the game: " + column);
+        }
+        Annotation annotation = new Annotation();
+        annotation.column = column;
+        SearchResult best = new Search(board, table).searchIterative(maxDepth, disk, timeMillis);
+        annotation.bestMove = best.getBestMove();
+        annotation.bestScore = best.getScore();
+        annotation.depth = best.getDepth();
+        annotation.nodes = best.getNodes();
+        annotation.complete = best.isComplete();
+        if (column == best.getBestMove()) {
+            annotation.score = best.getScore();
+        } else if (annotation.complete) {
+            // The root search only bounds the other moves, so search the played one.
+            board.putDisk(disk, column);
+            scorePlayed(annotation, annotation.depth, timeMillis);
+            if (annotation.isBlunder() && annotation.depth < maxDepth) {
+                // The search stopped early at a certain result, so the played move
+                // might only look worse because it wasn't searched as deep.
+                scorePlayed(annotation, maxDepth, timeMillis);
+            }
+            board.popDisk(column);
+        }
+        board.putDisk(disk, column);
+        disk = 3 - disk;
+        return annotation;
+    }
+
+    /**
+     * Scores the played move (already on the board) to the given depth. If the
+     * search runs out of time, the annotation keeps its previous score (and is
+     * marked incomplete if it had none).
+     */
+    private void scorePlayed(Annotation annotation, int depth, long timeMillis) {
+        Search played = new Search(board, table);
+        played.setTimeLimit(timeMillis);
+        SearchResult result = played.evaluate(depth, 3 - disk);
+        annotation.nodes += result.getNodes();
+        if (result.isComplete()) {
+            annotation.score = -result.getScore();
+        } else if (depth == annotation.depth) {
+            annotation.complete = false;
+        }
+    }
+}
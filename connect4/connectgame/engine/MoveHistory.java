@@ -0,0 +1,198 @@
+package connectgame.engine;
+
+import java.util.Arrays;
+
+/**
+ * <h4>MoveHistory</h4>
+ * <p>
+ * The moves of a game, oldest first, kept as one byte per move in a growing
+ * array: the column in the low 6 bits and the disk in the top 2 bits (see
+ * {@code encode}). Pushing and popping a move is O(1) and doesn't allocate
+ * (apart from the occasional growth of the array).
+ * <p>
+ * Only the engine package can change a MoveHistory, so a game can hand out
+ * its own history as a read-only view without copying it. The view is live:
+ * it always shows the game's current moves. Use {@code copy()} or
+ * {@code toBytes()} to keep the moves as they are now.
+ */
+public final class MoveHistory {
+    /**
+     * The largest column a MoveHistory can hold.
+     */
+    public static final int MAX_COLUMN = 0x3F;
+    private static final int DISK_SHIFT = 6;
+
+    private byte[] moves;
+    private int size = 0;
+
+    /**
+     * Constructs an empty MoveHistory.
+     *
+     * @param capacity The amount of moves to make room for at first (e.g. the
+     *                 amount of cells on the board).
+     */
+    public MoveHistory(int capacity) {
+        moves = new byte[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Returns a MoveHistory holding the given encoded moves (as written by
+     * {@code toBytes()}).
+     *
+     * @param bytes  The array to read from.
+     * @param offset Where the moves start.
+     * @param length The amount of moves.
+     */
+    public static MoveHistory fromBytes(byte[] bytes, int offset, int length) {
+        MoveHistory history = new MoveHistory(length);
+        System.arraycopy(bytes, offset, history.moves, 0, length);
+        history.size = length;
+        return history;
+    }
+
+    /**
+     * Returns the byte a move is stored as.
+     *
+     * @param disk   RED or YELLOW.
+     * @param column The column (0 to {@code MAX_COLUMN}).
+     */
+    public static byte encode(int disk, int column) {
+        return (byte) ((disk << DISK_SHIFT) | column);
+    }
+
+    /**
+     * Returns the column of an encoded move.
+     */
+    public static int columnOf(byte move) {
+        return move & MAX_COLUMN;
+    }
+
+    /**
+     * Returns the disk of an encoded move.
+     */
+    public static int diskOf(byte move) {
+        return (move & 0xFF) >>> DISK_SHIFT;
+    }
+
+    /**
+     * Adds a move to the end of the history.
+     */
+    void push(int disk, int column) {
+        if (size == moves.length) {
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        }
+        moves[size++] = encode(disk, column);
+    }
+
+    /**
+     * Removes the last move and returns it (encoded).
+     *
+     * @throws IllegalStateException if the history is empty.
+     */
+    byte pop() {
+        if (size == 0) {
+            throw new IllegalStateException("There are no moves to pop.");
+        }
+        return moves[--size];
+    }
+
+    /**
+     * Removes every move.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the amount of moves.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether there are no moves.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns move {@code index} (0 is the first move), encoded.
+     */
+    public byte get(int index) {
+        checkIndex(index);
+        return moves[index];
+    }
+
+    /**
+     * Returns the column of move {@code index} (0 is the first move).
+     */
+    public int getColumn(int index) {
+        return columnOf(get(index));
+    }
+
+    /**
+     * Returns the disk of move {@code index} (0 is the first move).
+     */
+    public int getDisk(int index) {
+        return diskOf(get(index));
+    }
+
+    /**
+     * Returns the column of the last move, -1 if none.
+     */
+    public int lastColumn() {
+        return size == 0 ? -1 : columnOf(moves[size - 1]);
+    }
+
+    /**
+     * Returns move {@code index} as a Play. Prefer the other getters where
+     * speed matters, as this allocates.
+     */
+    public Play getPlay(int index) {
+        byte move = get(index);
+        return new Play(diskOf(move), columnOf(move));
+    }
+
+    /**
+     * Returns the moves, encoded, in a new array of exactly {@code size()}
+     * bytes.
+     */
+    public byte[] toBytes() {
+        return Arrays.copyOf(moves, size);
+    }
+
+    /**
+     * Writes the moves, encoded, to {@code bytes} from {@code offset}.
+     *
+     * @return The amount of bytes written ({@code size()}).
+     */
+    public int writeTo(byte[] bytes, int offset) {
+        System.arraycopy(moves, 0, bytes, offset, size);
+        return size;
+    }
+
+    /**
+     * Returns an independent copy of this history.
+     */
+    public MoveHistory copy() {
+        return fromBytes(moves, 0, size);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Move " + index + " out of " + size + " moves.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            str.append(i == 0 ? "" : ", ").append(diskOf(moves[i]) == GameBoard.RED ? "R " : "Y ")
+                    .append(columnOf(moves[i]) + 1);
+        }
+        return str.append(']').toString();
+    }
+}
@@ -18,6 +18,20 @@ public class Play {
         this.column = column;
     }
 
+    /**
+     * Returns the disk (int) played.
+     */
+    public int getDisk() {
+        return disk;
+    }
+
+    /**
+     * Returns the column the disk was played in.
+     */
+    public int getColumn() {
+        return column;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == this) {
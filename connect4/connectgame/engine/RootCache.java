@@ -0,0 +1,112 @@
+package connectgame.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h4>RootCache</h4>
+ * <p>
+ * A small, bounded cache of finished root searches, keyed by
+ * {@link GameBoard#getKey()}, so that a position the computer has already
+ * moved in (e.g. after an undo, or when a game is replayed) can be answered
+ * straight away instead of searched again.
+ * <p>
+ * When the cache is full, the least recently used entry is dropped. A result
+ * only replaces an existing one for the same position if it is at least as
+ * deep. This class is thread safe.
+ */
+class RootCache {
+    /**
+     * A cached search result, with the time the search took (so that adaptive
+     * depth can be adjusted the same way as after the original search), and
+     * the time budget it had (0 for none).
+     */
+    static class Entry {
+        final SearchResult result;
+        final long timeElapsedms;
+        final long timeBudgetMillis;
+
+        Entry(SearchResult result, long timeElapsedms, long timeBudgetMillis) {
+            this.result = result;
+            this.timeElapsedms = timeElapsedms;
+            this.timeBudgetMillis = timeBudgetMillis;
+        }
+    }
+
+    private final LinkedHashMap<Long, Entry> entries;
+    private int capacity;
+
+    /**
+     * Constructs a new RootCache.
+     *
+     * @param capacity The maximum amount of positions to keep (0 to keep none).
+     */
+    RootCache(int capacity) {
+        this.capacity = capacity;
+        // Access order, so the eldest entry is the least recently used one.
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > RootCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result for a position if it was searched to at least
+     * {@code minDepth} (or its score is a certain win or loss, which more depth
+     * can't change), otherwise null. A timed search stops short of its depth,
+     * so with a time budget a shallower result also counts if its search had
+     * at least as much time.
+     *
+     * @param key              The position's key.
+     * @param minDepth         The depth the search would go to.
+     * @param timeBudgetMillis The time the search would have, or 0 for no limit.
+     */
+    synchronized Entry get(long key, int minDepth, long timeBudgetMillis) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        SearchResult result = entry.result;
+        if (result.getDepth() >= minDepth || Math.abs(result.getScore()) > Search.WIN
+                || timeBudgetMillis > 0 && entry.timeBudgetMillis >= timeBudgetMillis) {
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Caches the (complete) result of a root search, with the time budget it
+     * had (0 for none), unless a deeper result for the position is already
+     * cached.
+     */
+    synchronized void put(long key, SearchResult result, long timeElapsedms, long timeBudgetMillis) {
+        Entry old = entries.get(key);
+        if (old == null || result.getDepth() >= old.result.getDepth() && result != old.result) {
+            entries.put(key, new Entry(result, timeElapsedms, timeBudgetMillis));
+        }
+    }
+
+    /**
+     * Sets the maximum amount of positions to keep, dropping the least recently
+     * used ones if there are too many.
+     */
+    synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+        Iterator<Long> eldest = entries.keySet().iterator();
+        while (entries.size() > capacity) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,470 @@
+package connectgame.engine;
+
+import java.util.function.Consumer;
+
+/**
+ * <h4>Search</h4>
+ * <p>
+ * A minimax search with alpha-beta pruning and a transposition table (written
+ * in the negamax form, so every score is from the point of view of the player
+ * to move).
+ * <p>
+ * A Search works on the GameBoard it is given, and always puts it back the way
+ * it found it. Give each Search its own GameBoard (see
+ * {@link GameBoard#GameBoard(GameBoard)}) if it will run in a separate thread.
+ * The TranspositionTable, however, can be shared.
+ * <p>
+ * A search can be stopped from another thread with {@code stop()}, or by
+ * interrupting the thread running it.
+ */
+public class Search {
+    /**
+     * Any score over WIN is a win for the player to move, and any score under
+     * -WIN is a loss. The amount over WIN is the amount of empty spaces left when
+     * the game is won, so quicker wins have higher scores. Scores in between
+     * are draws (0) and static evaluations of unfinished positions.
+     */
+    public static final int WIN = 100;
+    /**
+     * Larger than any score, and the most a TranspositionTable can store (16
+     * bits), so boards can have at most {@code MAX_CELLS} spaces.
+     */
+    public static final int INFINITY = Short.MAX_VALUE;
+    public static final int MAX_CELLS = INFINITY - WIN - 1;
+
+    private static final int CHECK_INTERVAL = 1023; // How often (in nodes) to check for a stop.
+    // The most a static evaluation can score, so it is never taken for a win.
+    private static final int MAX_EVALUATION = WIN - 1;
+
+    // Enhanced transposition cutoffs are only tried this far from the end of the
+    // search, where a cutoff saves more than probing every move costs.
+    private static final int ETC_DEPTH = 3;
+
+    private final GameBoard board;
+    private final TranspositionTable table;
+    private final int cells;
+    private volatile boolean stopped = false;
+    private boolean aborted = false;
+    private long nodes = 0;
+    private long deadline = Long.MAX_VALUE; // System.nanoTime() to stop at.
+    private long nodeLimit = Long.MAX_VALUE; // The nodes to stop after.
+    private Consumer<SearchResult> iterationListener; // Told about each depth searchIterative finishes.
+    private boolean useEvaluation = true; // If false, unfinished positions at depth 0 score 0.
+    private boolean drawDetection = true; // If false, only a full board is a draw.
+
+    // Triangular array for the principal variation: pvTable[ply] holds the best
+    // line found from that ply, pvLength[ply] is where it ends. Sized for the
+    // deepest search so far (see ensurePlies).
+    private int[][] pvTable = new int[0][];
+    private int[] pvLength = new int[0];
+
+    /**
+     * Constructs a new Search.
+     *
+     * @param board The GameBoard to search. It is mutated during the search.
+     * @param table The TranspositionTable to use.
+     */
+    Search(GameBoard board, TranspositionTable table) {
+        this.board = board;
+        this.table = table;
+        this.cells = board.columns() * board.rows();
+    }
+
+    /**
+     * Stops the search as soon as possible. The search will return a result with
+     * {@code isComplete() == false}. Safe to call from any thread.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Stops any search after {@code timeMillis} milliseconds from now (the
+     * search returns a result with {@code isComplete() == false}).
+     * {@code searchIterative} sets its own time limit.
+     */
+    void setTimeLimit(long timeMillis) {
+        deadline = System.nanoTime() + timeMillis * 1000000;
+    }
+
+    /**
+     * Stops any search once it has visited about {@code maxNodes} positions in
+     * total (the search returns a result with {@code isComplete() == false}).
+     * Like a time limit, {@code searchIterative} still gives the best move of
+     * the deepest search that finished.
+     */
+    void setNodeLimit(long maxNodes) {
+        nodeLimit = maxNodes;
+    }
+
+    /**
+     * Sets a listener that {@code searchIterative} calls (on the searching
+     * thread) with the result of each depth as soon as it finishes, with the
+     * nodes of every iteration so far. It should return quickly, as the search
+     * waits for it.
+     */
+    void setIterationListener(Consumer<SearchResult> listener) {
+        iterationListener = listener;
+    }
+
+    /**
+     * Sets whether positions at the end of the search that haven't finished are
+     * scored with {@link GameBoard#getEvaluation} (the default) or as 0. Don't
+     * mix the two in one TranspositionTable.
+     */
+    void setEvaluation(boolean useEvaluation) {
+        this.useEvaluation = useEvaluation;
+    }
+
+    /**
+     * Sets whether positions where neither player can make a line any more (see
+     * {@link GameBoard#isDrawn()}), or has the moves left to, are scored as
+     * draws straight away (the default), instead of being searched until the
+     * board is full. With it, a player who can't win any more also can't score
+     * more than a draw.
+     */
+    void setDrawDetection(boolean drawDetection) {
+        this.drawDetection = drawDetection;
+    }
+
+    /**
+     * Returns the amount of positions visited so far.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Searches the position and returns the best move for the given disk. Every
+     * move is followed by {@code depth} more plies (so depth 0 looks 1 move
+     * ahead), like the original {@code Connect4} search.
+     *
+     * @param depth The depth to search after each root move.
+     * @param disk  The disk to move (RED or YELLOW).
+     * @return The best move with its score and principal variation.
+     */
+    public SearchResult search(int depth, int disk) {
+        ensurePlies(depth);
+        pvLength[0] = 0;
+        int alpha = -INFINITY;
+        int bestMove = -1;
+        // Search the best move of the last search of this position (e.g. the
+        // last iteration of iterative deepening) first.
+        final long key = board.getKey();
+        long entry = table.get(key);
+        for (int columnMove : orderMoves(board.getLegal(), TranspositionTable.bestMove(entry))) {
+            board.putDisk(disk, columnMove);
+            int eval = -negamax(depth, -INFINITY, -alpha, 3 - disk, 1);
+            board.popDisk(columnMove);
+            if (aborted) {
+                break;
+            }
+            if (eval > alpha || bestMove == -1) {
+                alpha = eval;
+                bestMove = columnMove;
+                updatePrincipalVariation(0, columnMove);
+            }
+        }
+        if (!aborted) {
+            // Each root move was followed by depth more plies, so the root
+            // itself was searched to depth + 1.
+            table.put(key, alpha, depth + 1, TranspositionTable.EXACT, bestMove);
+        }
+        return new SearchResult(bestMove, alpha, depth, nodes, getPrincipalVariation(), !aborted);
+    }
+
+    /**
+     * Searches the position with iterative deepening (depth 0, 1, 2...) until
+     * {@code maxDepth} is reached, the result is a certain win or loss, or the
+     * time runs out.
+     *
+     * @param maxDepth   The deepest depth to search (as in {@code search}).
+     * @param disk       The disk to move (RED or YELLOW).
+     * @param timeMillis The time budget in milliseconds, or 0 for none.
+     * @return The result of the deepest search that finished (with the nodes of
+     *         every iteration), or the unfinished first iteration if none did.
+     */
+    public SearchResult searchIterative(int maxDepth, int disk, long timeMillis) {
+        deadline = (timeMillis > 0) ? System.nanoTime() + timeMillis * 1000000 : Long.MAX_VALUE;
+        SearchResult best = null;
+        for (int iterationDepth = 0; iterationDepth <= maxDepth; iterationDepth++) {
+            SearchResult result = search(iterationDepth, disk);
+            if (!result.isComplete()) {
+                if (best == null) {
+                    best = result;
+                }
+                break;
+            }
+            best = result;
+            if (iterationListener != null) {
+                iterationListener.accept(result);
+            }
+            if (Math.abs(result.getScore()) > WIN) {
+                break; // A certain result won't change with more depth.
+            }
+        }
+        best.nodes = nodes;
+        // Running out of time still gives a usable move, but being stopped doesn't.
+        best.complete = best.bestMove != -1
+                && (best.complete || !stopped && !Thread.currentThread().isInterrupted());
+        return best;
+    }
+
+    /**
+     * Searches the position and returns the best {@code k} moves for the given
+     * disk, best first, each with its own score and principal variation.
+     * <p>
+     * This is a single search: once {@code k} moves have been found, the rest
+     * of the root moves are searched with a window that only asks whether they
+     * beat the worst of those {@code k}, so moves that can't make the list are
+     * pruned just like in {@code search}, and the transposition table is shared
+     * between all root moves.
+     *
+     * @param depth The depth to search after each root move.
+     * @param disk  The disk to move (RED or YELLOW).
+     * @param k     The maximum amount of moves to return (at least 1).
+     * @return Up to {@code k} results (fewer if there are fewer legal moves). The
+     *         scores are exact unless the search was stopped, in which case the
+     *         results are marked incomplete.
+     */
+    public SearchResult[] searchMultiPV(int depth, int disk, int k) {
+        ensurePlies(depth);
+        SearchResult[] best = new SearchResult[k];
+        int found = 0;
+        for (int columnMove : board.getLegal()) {
+            // Only moves that beat the current k-th best move can make the list.
+            int alpha = (found == k) ? best[k - 1].score : -INFINITY;
+            board.putDisk(disk, columnMove);
+            int eval = -negamax(depth, -INFINITY, -alpha, 3 - disk, 1);
+            board.popDisk(columnMove);
+            if (aborted) {
+                break;
+            }
+            if (found < k || eval > alpha) {
+                // Insert the move into the (sorted) list.
+                updatePrincipalVariation(0, columnMove);
+                SearchResult result = new SearchResult(columnMove, eval, depth, nodes, getPrincipalVariation(),
+                        true);
+                int i = (found < k) ? found++ : k - 1;
+                while (i > 0 && best[i - 1].score < eval) {
+                    best[i] = best[i - 1];
+                    i--;
+                }
+                best[i] = result;
+            }
+        }
+        SearchResult[] results = new SearchResult[found];
+        for (int i = 0; i < found; i++) {
+            results[i] = best[i];
+            results[i].nodes = nodes;
+            results[i].complete = !aborted;
+        }
+        return results;
+    }
+
+    /**
+     * Searches the position with a full window and returns its score for the
+     * given disk. Unlike {@code search}, {@code depth} counts from this position,
+     * so this is the score {@code search} would give a root move leading here
+     * (negated, as it is for the other player).
+     *
+     * @param depth The depth to search.
+     * @param disk  The disk to move (RED or YELLOW).
+     * @return The score with the best move and principal variation (the best move
+     *         is -1 if the game is already over or depth is 0).
+     */
+    public SearchResult evaluate(int depth, int disk) {
+        return evaluate(depth, disk, -INFINITY, INFINITY);
+    }
+
+    /**
+     * Like {@code evaluate(depth, disk)}, but with the search window
+     * {@code (alpha, beta)}: a score outside it is only a bound on the real
+     * score (see {@link SearchResult#getScoreType()}), which is quicker to
+     * find.
+     */
+    public SearchResult evaluate(int depth, int disk, int alpha, int beta) {
+        ensurePlies(depth);
+        int score = negamax(depth, alpha, beta, disk, 0);
+        int[] pv = getPrincipalVariation();
+        SearchResult result = new SearchResult(pv.length > 0 ? pv[0] : -1, score, depth, nodes, pv, !aborted);
+        result.scoreType = (score <= alpha) ? SearchResult.UPPER_BOUND
+                : (score >= beta) ? SearchResult.LOWER_BOUND : SearchResult.EXACT;
+        return result;
+    }
+
+    /**
+     * Makes sure the principal variation table has room for a search of the
+     * given depth (after a root move, so up to {@code depth + 1} plies from the
+     * root, and never more than there are spaces).
+     */
+    private void ensurePlies(int depth) {
+        final int size = Math.min(Math.max(depth, 0), cells) + 3;
+        if (pvLength.length < size) {
+            pvTable = new int[size][size];
+            pvLength = new int[size];
+        }
+    }
+
+    /**
+     * Returns a copy of the principal variation from the root.
+     */
+    private int[] getPrincipalVariation() {
+        int[] pv = new int[pvLength[0]];
+        System.arraycopy(pvTable[0], 0, pv, 0, pv.length);
+        return pv;
+    }
+
+    /**
+     * The recursive part of the search.
+     *
+     * @param depth The depth left to search.
+     * @param alpha The lower bound of the search window.
+     * @param beta  The upper bound of the search window.
+     * @param disk  The disk to move.
+     * @param ply   How many plies from the root this position is.
+     * @return The score of the position for {@code disk}.
+     */
+    private int negamax(int depth, int alpha, int beta, int disk, int ply) {
+        pvLength[ply] = ply;
+        if ((++nodes & CHECK_INTERVAL) == 0
+                && (stopped || Thread.currentThread().isInterrupted() || System.nanoTime() > deadline
+                        || nodes > nodeLimit)) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        // Return if the game has ended, or if the depth is at the maximum.
+        // Only the player who just moved can have won.
+        if (board.hasWon(3 - disk)) {
+            return -(WIN + cells - board.getDiskCount());
+        }
+        if (board.getDiskCount() == cells) {
+            return 0; // Draw
+        }
+        if (drawDetection) {
+            // A player who needs more disks for every line than they have moves
+            // left can't win, so can't do better than a draw.
+            final int empty = cells - board.getDiskCount();
+            final boolean canWin = board.getDisksNeeded(disk) <= (empty + 1) / 2;
+            final boolean otherCanWin = board.getDisksNeeded(3 - disk) <= empty / 2;
+            if (!canWin && !otherCanWin) {
+                return 0; // Nothing but a draw is left.
+            }
+            if (!canWin && beta > 0) {
+                beta = 0;
+                if (alpha >= beta) {
+                    return beta;
+                }
+            }
+            if (!otherCanWin && alpha < 0) {
+                alpha = 0;
+                if (alpha >= beta) {
+                    return alpha;
+                }
+            }
+        }
+        if (depth == 0) {
+            if (!useEvaluation) {
+                return 0;
+            }
+            final int evaluation = board.getEvaluation(disk);
+            return Math.max(-MAX_EVALUATION, Math.min(MAX_EVALUATION, evaluation));
+        }
+        // Look up the position in the transposition table.
+        final long key = board.getKey();
+        final int originalAlpha = alpha;
+        final long entry = table.get(key);
+        if (entry != TranspositionTable.MISS && TranspositionTable.depth(entry) >= depth) {
+            final int entryScore = TranspositionTable.score(entry);
+            final int entryType = TranspositionTable.type(entry);
+            if (entryType == TranspositionTable.EXACT) {
+                return entryScore;
+            } else if (entryType == TranspositionTable.LOWER_BOUND) {
+                alpha = Math.max(alpha, entryScore);
+            } else {
+                beta = Math.min(beta, entryScore);
+            }
+            if (alpha >= beta) {
+                return entryScore;
+            }
+        }
+        final int[] legal = orderMoves(board.getLegal(), TranspositionTable.bestMove(entry));
+        if (depth >= ETC_DEPTH) {
+            // Enhanced transposition cutoff: if the table already shows that one
+            // of the moves is good enough to cut off, there's no need to search.
+            for (int columnMove : legal) {
+                final long child = table.get(board.getKeyAfter(disk, columnMove));
+                if (child != TranspositionTable.MISS && TranspositionTable.depth(child) >= depth - 1
+                        && TranspositionTable.type(child) != TranspositionTable.LOWER_BOUND
+                        && -TranspositionTable.score(child) >= beta) {
+                    table.put(key, -TranspositionTable.score(child), depth, TranspositionTable.LOWER_BOUND,
+                            columnMove);
+                    return -TranspositionTable.score(child);
+                }
+            }
+        }
+        int maxEval = -INFINITY;
+        int bestMove = -1;
+        for (int columnMove : legal) {
+            board.putDisk(disk, columnMove);
+            int eval = -negamax(depth - 1, -beta, -alpha, 3 - disk, ply + 1);
+            board.popDisk(columnMove);
+            if (aborted) {
+                return 0;
+            }
+            if (eval > maxEval) {
+                maxEval = eval;
+                bestMove = columnMove;
+                if (eval > alpha) {
+                    alpha = eval;
+                    updatePrincipalVariation(ply, columnMove);
+                }
+            }
+            if (alpha >= beta) { // Alpha-beta pruning
+                break;
+            }
+        }
+        int type;
+        if (maxEval <= originalAlpha) {
+            type = TranspositionTable.UPPER_BOUND;
+        } else if (maxEval >= beta) {
+            type = TranspositionTable.LOWER_BOUND;
+        } else {
+            type = TranspositionTable.EXACT;
+        }
+        table.put(key, maxEval, depth, type, bestMove);
+        return maxEval;
+    }
+
+    /**
+     * Moves the given move (if it is legal) to the front of the legal moves,
+     * keeping the rest in order, and returns them.
+     *
+     * @param legal     The legal moves (from {@code getLegal()}, so it can be
+     *                  changed).
+     * @param firstMove The move to search first, or -1 for none.
+     */
+    private static int[] orderMoves(int[] legal, int firstMove) {
+        for (int i = 0; i < legal.length; i++) {
+            if (legal[i] == firstMove) {
+                System.arraycopy(legal, 0, legal, 1, i);
+                legal[0] = firstMove;
+                break;
+            }
+        }
+        return legal;
+    }
+
+    /**
+     * Sets the principal variation at {@code ply} to the given move followed by
+     * the principal variation of the next ply.
+     */
+    private void updatePrincipalVariation(int ply, int columnMove) {
+        pvTable[ply][ply] = columnMove;
+        int length = pvLength[ply + 1];
+        System.arraycopy(pvTable[ply + 1], ply + 1, pvTable[ply], ply + 1, length - (ply + 1));
+        pvLength[ply] = Math.max(length, ply + 1);
+    }
+}
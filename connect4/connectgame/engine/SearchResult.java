@@ -0,0 +1,108 @@
+package connectgame.engine;
+
+/**
+ * A wrapper class for the result of a search of a position.
+ */
+public class SearchResult {
+    // Score types
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1; // The real score is at least the score given.
+    public static final int UPPER_BOUND = 2; // The real score is at most the score given.
+
+    int bestMove;
+    int score;
+    int depth;
+    long nodes;
+    int[] principalVariation;
+    boolean complete;
+    int scoreType = EXACT;
+
+    /**
+     * Constructs a new SearchResult object.
+     *
+     * @param bestMove           The best column found, -1 if none.
+     * @param score              The score of the position for the player to move.
+     * @param depth              The depth that was searched.
+     * @param nodes              The amount of positions visited.
+     * @param principalVariation The expected line of play, starting with
+     *                           {@code bestMove}.
+     * @param complete           Whether the search finished (false if it was
+     *                           stopped part way through).
+     */
+    public SearchResult(int bestMove, int score, int depth, long nodes, int[] principalVariation,
+            boolean complete) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.principalVariation = principalVariation;
+        this.complete = complete;
+    }
+
+    /**
+     * Returns the best column found, -1 if none.
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * Returns the score of the position for the player to move. Scores over
+     * {@link Search#WIN} are wins, scores under {@code -Search.WIN} are losses.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the depth that was searched.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the amount of positions visited.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the expected line of play (as columns), starting with the best
+     * move.
+     */
+    public int[] getPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    /**
+     * Returns EXACT if the score is exact, or LOWER_BOUND or UPPER_BOUND if the
+     * score is only a bound.
+     */
+    public int getScoreType() {
+        return scoreType;
+    }
+
+    /**
+     * Returns whether the search finished. If not, the result should not be
+     * trusted.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        str.append("depth ").append(depth)
+                .append(" score ").append(score)
+                .append(scoreType == LOWER_BOUND ? " lowerbound" : scoreType == UPPER_BOUND ? " upperbound" : "")
+                .append(" nodes ").append(nodes)
+                .append(" pv");
+        for (int column : principalVariation) {
+            str.append(' ').append(column + 1);
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,136 @@
+package connectgame.engine;
+
+import java.util.Arrays;
+
+/**
+ * <h4>SharedTranspositionTable</h4>
+ * <p>
+ * A {@link TranspositionTable} that lots of games (e.g. all the sessions of a
+ * server) can share, so a position one game has searched, such as a common
+ * opening, doesn't have to be searched again by the next.
+ * <p>
+ * The entries are packed into two flat arrays of longs, allocated up front, so
+ * the memory used is fixed (16 bytes an entry), and neither looking up nor
+ * storing an entry allocates anything. Nothing is locked either: each slot
+ * holds the packed entry and the key XORed with it, written without
+ * synchronization, and a read only accepts a slot whose two halves match the
+ * key. If two threads write the same
+ * slot at once, or a read sees half of a write, the slot just doesn't match
+ * (losing an entry now and then is fine for a transposition table).
+ * <p>
+ * Slots come in pairs: the first of each pair keeps the deepest entry that
+ * fell there, and the second the newest of the rest.
+ * <p>
+ * Scores are only valid for games with the same board size and search
+ * settings, so each kind of game uses its own view of the table
+ * ({@code withSalt}): its keys are XORed with a salt for its settings, and
+ * the entries of other kinds of game don't match them. Changing a setting
+ * then just means using another view, as clearing the table would clear it
+ * for every game.
+ */
+final class SharedTranspositionTable extends TranspositionTable {
+    private static final int MAX_ENTRIES = 1 << 30;
+
+    private final long[] keys; // The key XOR the data.
+    private final long[] data; // The packed entries (MISS in an empty slot).
+    private final int mask; // Of the index of the first slot of a pair.
+    private final long salt;
+
+    /**
+     * Constructs an empty SharedTranspositionTable, with no salt.
+     *
+     * @param capacity The amount of entries (rounded down to a power of 2, at
+     *                 least 2).
+     */
+    SharedTranspositionTable(int capacity) {
+        int entries = Integer.highestOneBit(Math.min(Math.max(capacity, 2), MAX_ENTRIES));
+        keys = new long[entries];
+        data = new long[entries];
+        mask = (entries - 1) & ~1;
+        salt = 0;
+    }
+
+    private SharedTranspositionTable(SharedTranspositionTable table, long salt) {
+        keys = table.keys;
+        data = table.data;
+        mask = table.mask;
+        this.salt = salt;
+    }
+
+    /**
+     * Returns a view of this table (sharing its entries) whose keys are XORed
+     * with the given salt.
+     */
+    SharedTranspositionTable withSalt(long salt) {
+        return new SharedTranspositionTable(this, salt);
+    }
+
+    /**
+     * Returns the amount of entries the table can hold.
+     */
+    int capacity() {
+        return data.length;
+    }
+
+    /**
+     * Returns the index of the first slot of the pair for a (salted) key.
+     */
+    private int index(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    @Override
+    long get(long key) {
+        final long saltedKey = key ^ salt;
+        final int index = index(saltedKey);
+        for (int i = index; i < index + 2; i++) {
+            long entry = data[i];
+            if (entry != MISS && (keys[i] ^ entry) == saltedKey) {
+                return entry;
+            }
+        }
+        return MISS;
+    }
+
+    @Override
+    void put(long key, int score, int depth, int type, int bestMove) {
+        final long saltedKey = key ^ salt;
+        final int index = index(saltedKey);
+        final long entry = pack(score, depth, type, bestMove);
+        long deepest = data[index];
+        int deepestDepth = (deepest != MISS) ? depth(deepest) : -1;
+        int slot = index;
+        if (depth < deepestDepth) {
+            if ((keys[index] ^ deepest) == saltedKey) {
+                return; // The position already has a deeper entry.
+            }
+            slot = index + 1;
+        }
+        keys[slot] = saltedKey ^ entry;
+        data[slot] = entry;
+    }
+
+    /**
+     * Removes all entries, for every view of the table.
+     */
+    @Override
+    void clear() {
+        Arrays.fill(data, 0);
+        Arrays.fill(keys, 0);
+    }
+
+    /**
+     * Returns the amount of slots in use (for every view of the table), by
+     * counting them.
+     */
+    @Override
+    int size() {
+        int used = 0;
+        for (long entry : data) {
+            if (entry != MISS) {
+                used++;
+            }
+        }
+        return used;
+    }
+}
@@ -0,0 +1,17 @@
+package connectgame.engine;
+
+/**
+ * The algorithms that can be used to decide a computer move.
+ */
+public enum Strategy {
+    /**
+     * Minimax with alpha-beta pruning and a transposition table (see
+     * {@link Search}).
+     */
+    MINIMAX,
+    /**
+     * Monte Carlo Tree Search with random playouts (see
+     * {@link MonteCarloSearch}).
+     */
+    MONTE_CARLO
+}
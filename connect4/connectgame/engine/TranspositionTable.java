@@ -0,0 +1,102 @@
+package connectgame.engine;
+
+/**
+ * <h4>TranspositionTable</h4>
+ * <p>
+ * A table of scores for positions that have already been searched, keyed by
+ * {@link GameBoard#getKey()}. Each entry remembers the depth it was searched
+ * to and whether the score is exact or only a bound (because of alpha-beta
+ * pruning), so entries stay valid from one move to the next and can be
+ * filled by one search (e.g. pondering) and used by another. It also
+ * remembers the best move found, which is searched first when the position
+ * comes up again, even if the entry isn't deep enough to use the score.
+ * <p>
+ * An entry is packed into a single long (see {@code score}, {@code depth},
+ * {@code type} and {@code bestMove}), so looking one up allocates nothing.
+ * <p>
+ * A game normally has a table of its own (a {@link LocalTranspositionTable}),
+ * but games can also share one process-wide table (see
+ * {@link SharedTranspositionTable}).
+ * <p>
+ * Tables are safe to use from multiple threads.
+ */
+abstract class TranspositionTable {
+    // Score types
+    static final int EXACT = 0;
+    static final int LOWER_BOUND = 1; // The real score is at least the stored score.
+    static final int UPPER_BOUND = 2; // The real score is at most the stored score.
+
+    static final long MISS = 0; // What get returns for a position with no entry.
+    // Entry bits: score (16), depth (16), type (2), best move + 1 (8), and the
+    // top bit, so that no entry is MISS.
+    private static final int DEPTH_SHIFT = 16;
+    private static final int TYPE_SHIFT = 32;
+    private static final int MOVE_SHIFT = 34;
+    private static final long USED = 1L << 63;
+
+    /**
+     * Returns an entry packed into a long (never MISS).
+     */
+    static long pack(int score, int depth, int type, int bestMove) {
+        return USED | (long) (bestMove + 1) << MOVE_SHIFT | (long) type << TYPE_SHIFT | (long) depth << DEPTH_SHIFT
+                | (score & 0xFFFF);
+    }
+
+    /**
+     * Returns the score of an entry.
+     */
+    static int score(long entry) {
+        return (short) entry;
+    }
+
+    /**
+     * Returns the depth an entry was searched to (0 for MISS).
+     */
+    static int depth(long entry) {
+        return (char) (entry >>> DEPTH_SHIFT);
+    }
+
+    /**
+     * Returns EXACT, LOWER_BOUND or UPPER_BOUND for an entry.
+     */
+    static int type(long entry) {
+        return (int) (entry >>> TYPE_SHIFT) & 3;
+    }
+
+    /**
+     * Returns the column of the best move of an entry, or -1 if none (or
+     * MISS).
+     */
+    static int bestMove(long entry) {
+        return (int) (entry >>> MOVE_SHIFT & 0xFF) - 1;
+    }
+
+    /**
+     * Returns the entry for the position with the given key, or MISS if none.
+     */
+    abstract long get(long key);
+
+    /**
+     * Stores a score for the position with the given key. An existing entry
+     * for the position is only replaced if the new one was searched at least
+     * as deep.
+     *
+     * @param key      The position key.
+     * @param score    The score (from the point of view of the player to move).
+     * @param depth    The depth the position was searched to.
+     * @param type     EXACT, LOWER_BOUND or UPPER_BOUND.
+     * @param bestMove The column of the best move found (or the move that
+     *                 caused the cutoff), or -1 if none.
+     */
+    abstract void put(long key, int score, int depth, int type, int bestMove);
+
+    /**
+     * Removes all entries.
+     */
+    abstract void clear();
+
+    /**
+     * Returns the amount of entries currently in the table.
+     */
+    abstract int size();
+}
@@ -0,0 +1,101 @@
+package connectgame.engine;
+
+/**
+ * <h4>WinningLines</h4>
+ * <p>
+ * Tables of every possible winning line on a board of a given size: each line
+ * has an index, and each space has the indices of the lines through it. A
+ * GameBoard keeps a count of each player's disks in each line, updated by
+ * {@code putDisk} and {@code popDisk} using these tables, so a win (on boards
+ * too big for a single long bitboard), whether a line is still open, and the
+ * static evaluation are known without scanning the board.
+ * <p>
+ * The tables are never mutated after construction, so one instance is shared
+ * by a GameBoard and all its copies.
+ */
+final class WinningLines {
+    // The 4 directions a line can go in, as (columnStep, rowStep).
+    private static final int[][] DIRECTIONS = { { 1, 0 }, { 0, 1 }, { 1, 1 }, { 1, -1 } };
+
+    private final int rows;
+    private final int lineCount;
+    // cellLines[column * rows + row] holds the indices of the lines through that space.
+    private final int[][] cellLines;
+    private final int[] rowSums; // The sum of the rows of the spaces in each line.
+
+    /**
+     * Builds the tables for a board of the given size.
+     */
+    WinningLines(int columns, int rows, int toWin) {
+        this.rows = rows;
+        // Count the lines through each space first, so each array is the right size.
+        int[] linesPerCell = new int[columns * rows];
+        int lines = 0;
+        for (int[] direction : DIRECTIONS) {
+            for (int column = 0; column < columns; column++) {
+                for (int row = 0; row < rows; row++) {
+                    if (fits(columns, rows, toWin, column, row, direction)) {
+                        for (int k = 0; k < toWin; k++) {
+                            linesPerCell[(column + k * direction[0]) * rows + row + k * direction[1]]++;
+                        }
+                        lines++;
+                    }
+                }
+            }
+        }
+        lineCount = lines;
+        rowSums = new int[lines];
+        cellLines = new int[columns * rows][];
+        for (int i = 0; i < cellLines.length; i++) {
+            cellLines[i] = new int[linesPerCell[i]];
+        }
+        // Then fill them in (linesPerCell now counts back down to 0).
+        int line = 0;
+        for (int[] direction : DIRECTIONS) {
+            for (int column = 0; column < columns; column++) {
+                for (int row = 0; row < rows; row++) {
+                    if (fits(columns, rows, toWin, column, row, direction)) {
+                        for (int k = 0; k < toWin; k++) {
+                            final int cell = (column + k * direction[0]) * rows + row + k * direction[1];
+                            cellLines[cell][--linesPerCell[cell]] = line;
+                            rowSums[line] += row + k * direction[1];
+                        }
+                        line++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether a line starting at (column, row) in the given direction stays on
+     * the board.
+     */
+    private static boolean fits(int columns, int rows, int toWin, int column, int row, int[] direction) {
+        final int endColumn = column + (toWin - 1) * direction[0];
+        final int endRow = row + (toWin - 1) * direction[1];
+        return endColumn < columns && endRow >= 0 && endRow < rows;
+    }
+
+    /**
+     * Returns the amount of winning lines on the board.
+     */
+    int lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the indices of the lines through the given space. The array must
+     * not be changed.
+     */
+    int[] linesThrough(int column, int row) {
+        return cellLines[column * rows + row];
+    }
+
+    /**
+     * Returns the sum of the rows of the spaces in the given line.
+     */
+    int rowSum(int line) {
+        return rowSums[line];
+    }
+}
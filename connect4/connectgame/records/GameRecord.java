@@ -0,0 +1,238 @@
+package connectgame.records;
+
+import java.util.Arrays;
+
+import connectgame.engine.ConnectGame;
+import connectgame.engine.MoveHistory;
+import connectgame.engine.SearchResult;
+
+/**
+ * <h4>GameRecord</h4>
+ * <p>
+ * One finished (or unfinished) game as it is stored in a game-record file:
+ * the moves, the result, and for each move optionally the engine stats of the
+ * search that chose it (score, depth, nodes and time).
+ * <p>
+ * A GameRecord is mutable and its arrays only grow, so one instance can be
+ * reused for every game read from a file (see
+ * {@link GameRecordReader#next(GameRecord)}) without allocating.
+ */
+public class GameRecord {
+    private static final int INITIAL_MOVES = 42;
+
+    private final int columns;
+    private final int rows;
+    private final int toWin;
+    private int result = 0; // 0 (not finished), RED, YELLOW or 3 (draw), as ConnectGame.getWinner().
+    private int moveCount = 0;
+    private byte[] moves = new byte[INITIAL_MOVES];
+    private boolean[] hasStats = new boolean[INITIAL_MOVES];
+    private int[] scores = new int[INITIAL_MOVES];
+    private int[] depths = new int[INITIAL_MOVES];
+    private long[] nodes = new long[INITIAL_MOVES];
+    private long[] timeMicros = new long[INITIAL_MOVES];
+
+    /**
+     * Constructs an empty GameRecord for the given board size.
+     */
+    public GameRecord(int columns, int rows, int toWin) {
+        this.columns = columns;
+        this.rows = rows;
+        this.toWin = toWin;
+    }
+
+    /**
+     * Returns a GameRecord with the moves and result of the given game (with
+     * no engine stats).
+     */
+    public static GameRecord of(ConnectGame game) {
+        GameRecord record = new GameRecord(game.columns(), game.rows(), game.toWin());
+        MoveHistory history = game.getHistory();
+        for (int i = 0; i < history.size(); i++) {
+            record.addMove(history.getColumn(i));
+        }
+        record.setResult(game.getWinner());
+        return record;
+    }
+
+    /**
+     * Adds a move without engine stats (e.g. a player's move).
+     */
+    public void addMove(int column) {
+        checkColumn(column);
+        ensureCapacity(moveCount + 1);
+        moves[moveCount] = (byte) column;
+        hasStats[moveCount] = false;
+        moveCount++;
+    }
+
+    /**
+     * Adds an engine move with the stats of its search.
+     *
+     * @param column     The column played.
+     * @param score      The score the engine gave the move.
+     * @param depth      The depth searched.
+     * @param nodes      The amount of positions (or playouts) searched.
+     * @param timeMicros The time taken, in microseconds.
+     */
+    public void addMove(int column, int score, int depth, long nodes, long timeMicros) {
+        addMove(column);
+        setStats(moveCount - 1, score, depth, nodes, timeMicros);
+    }
+
+    /**
+     * Adds an engine move with the stats of the given search result.
+     */
+    public void addMove(SearchResult result, long timeMicros) {
+        addMove(result.getBestMove(), result.getScore(), result.getDepth(), result.getNodes(), timeMicros);
+    }
+
+    /**
+     * Removes every move after the first {@code moveCount} (e.g. after moves
+     * are undone), and sets the result back to 0.
+     */
+    public void truncate(int moveCount) {
+        if (moveCount < 0 || moveCount > this.moveCount) {
+            throw new IndexOutOfBoundsException("Can't truncate " + this.moveCount + " moves to " + moveCount);
+        }
+        this.moveCount = moveCount;
+        result = 0;
+    }
+
+    /**
+     * Removes every move and sets the result back to 0.
+     */
+    public void clear() {
+        truncate(0);
+    }
+
+    /**
+     * Sets the result: 0 (not finished), RED, YELLOW or 3 (draw).
+     */
+    public void setResult(int result) {
+        if (result < 0 || result > 3) {
+            throw new IllegalArgumentException("Invalid result: " + result);
+        }
+        this.result = result;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getToWin() {
+        return toWin;
+    }
+
+    /**
+     * Returns the result: 0 (not finished), RED, YELLOW or 3 (draw).
+     */
+    public int getResult() {
+        return result;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Returns the column of move {@code index} (0 is the first move).
+     */
+    public int getMove(int index) {
+        checkIndex(index);
+        return moves[index];
+    }
+
+    /**
+     * Returns whether move {@code index} has engine stats.
+     */
+    public boolean hasStats(int index) {
+        checkIndex(index);
+        return hasStats[index];
+    }
+
+    /**
+     * Returns the score of move {@code index}, only meaningful if it has stats.
+     */
+    public int getScore(int index) {
+        checkIndex(index);
+        return scores[index];
+    }
+
+    /**
+     * Returns the depth of move {@code index}, only meaningful if it has stats.
+     */
+    public int getDepth(int index) {
+        checkIndex(index);
+        return depths[index];
+    }
+
+    /**
+     * Returns the nodes of move {@code index}, only meaningful if it has stats.
+     */
+    public long getNodes(int index) {
+        checkIndex(index);
+        return nodes[index];
+    }
+
+    /**
+     * Returns the time (in microseconds) of move {@code index}, only
+     * meaningful if it has stats.
+     */
+    public long getTimeMicros(int index) {
+        checkIndex(index);
+        return timeMicros[index];
+    }
+
+    /**
+     * Sets the engine stats of move {@code index}.
+     */
+    void setStats(int index, int score, int depth, long nodes, long timeMicros) {
+        checkIndex(index);
+        hasStats[index] = true;
+        scores[index] = score;
+        depths[index] = depth;
+        this.nodes[index] = nodes;
+        this.timeMicros[index] = timeMicros;
+    }
+
+    /**
+     * Makes room for at least {@code capacity} moves.
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity > moves.length) {
+            int newLength = Math.max(capacity, moves.length * 2);
+            moves = Arrays.copyOf(moves, newLength);
+            hasStats = Arrays.copyOf(hasStats, newLength);
+            scores = Arrays.copyOf(scores, newLength);
+            depths = Arrays.copyOf(depths, newLength);
+            nodes = Arrays.copyOf(nodes, newLength);
+            timeMicros = Arrays.copyOf(timeMicros, newLength);
+        }
+    }
+
+    private void checkColumn(int column) {
+        if (column < 0 || column >= columns || column > MoveHistory.MAX_COLUMN) {
+            throw new IllegalArgumentException("Invalid column: " + column);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= moveCount) {
+            throw new IndexOutOfBoundsException("Move " + index + " out of " + moveCount + " moves.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < moveCount; i++) {
+            str.append(i == 0 ? "" : " ").append(moves[i] + 1);
+        }
+        return str.append(" (result ").append(result).append(')').toString();
+    }
+}
@@ -0,0 +1,184 @@
+package connectgame.records;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <h4>GameRecordReader</h4>
+ * <p>
+ * Reads the games in a game-record file one at a time, in the order they
+ * were written. The file is read through a fixed size buffer and each game
+ * is decoded into a GameRecord supplied by the caller, so a file of any size
+ * can be read in constant memory:
+ *
+ * <pre>
+ * try (GameRecordReader reader = new GameRecordReader(path)) {
+ *     GameRecord game = reader.newRecord();
+ *     while (reader.next(game)) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public class GameRecordReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final int columns;
+    private final int rows;
+    private final int toWin;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private boolean endOfFile = false;
+    private long gamesRead = 0;
+    private long recordOffset = -1; // Where the last game read starts in the file.
+
+    /**
+     * Opens a game-record file and reads its header.
+     *
+     * @throws IOException if the file can't be opened or isn't a game-record
+     *                     file.
+     */
+    public GameRecordReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            buffer.flip(); // Empty, ready for reading.
+            fill(RecordFormat.HEADER_SIZE);
+            int[] size = RecordFormat.readHeader(buffer);
+            columns = size[0];
+            rows = size[1];
+            toWin = size[2];
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a new, empty GameRecord for the board size of this file.
+     */
+    public GameRecord newRecord() {
+        return new GameRecord(columns, rows, toWin);
+    }
+
+    /**
+     * Reads the next game into {@code record}, replacing what it held.
+     *
+     * @param record A GameRecord for this file's board size (see
+     *               {@code newRecord()}).
+     * @return {@code true} if a game was read, {@code false} at the end of the
+     *         file.
+     * @throws EOFException if the file ends part way through a game (e.g. the
+     *                      writer was killed).
+     * @throws IOException  if the file is corrupt or can't be read.
+     */
+    public boolean next(GameRecord record) throws IOException {
+        if (record.getColumns() != columns || record.getRows() != rows || record.getToWin() != toWin) {
+            throw new IllegalArgumentException("The record's board size doesn't match the file.");
+        }
+        fill(RecordFormat.MAX_VARINT_BYTES);
+        if (!buffer.hasRemaining()) {
+            return false;
+        }
+        final long offset = channel.position() - buffer.remaining();
+        final int length;
+        try {
+            length = (int) RecordFormat.getVarint(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("The file ends part way through a game.");
+        }
+        if (length < 0) {
+            throw new IOException("Corrupt game record.");
+        }
+        if (length > buffer.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocateDirect(length);
+            bigger.put(buffer).flip();
+            buffer = bigger;
+        }
+        fill(length);
+        if (buffer.remaining() < length) {
+            throw new EOFException("The file ends part way through a game.");
+        }
+        final int limit = buffer.limit();
+        buffer.limit(buffer.position() + length); // So a corrupt record can't read into the next one.
+        try {
+            RecordFormat.readBody(buffer, length, record);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt game record.", e);
+        } finally {
+            buffer.limit(limit);
+        }
+        gamesRead++;
+        recordOffset = offset;
+        return true;
+    }
+
+    /**
+     * Returns where the last game read starts in the file (for {@code seek}),
+     * -1 if none has been read.
+     */
+    public long getRecordOffset() {
+        return recordOffset;
+    }
+
+    /**
+     * Moves to the given offset, so the game starting there is read next.
+     *
+     * @param offset An offset from {@code getRecordOffset()}.
+     */
+    public void seek(long offset) throws IOException {
+        if (offset < RecordFormat.HEADER_SIZE) {
+            throw new IllegalArgumentException("Invalid game offset: " + offset);
+        }
+        channel.position(offset);
+        buffer.clear().flip(); // Empty
+        endOfFile = false;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getToWin() {
+        return toWin;
+    }
+
+    /**
+     * Returns the amount of games read so far.
+     */
+    public long getGamesRead() {
+        return gamesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads from the file until at least {@code amount} bytes are buffered, or
+     * the file ends.
+     */
+    private void fill(int amount) throws IOException {
+        if (buffer.remaining() >= amount || endOfFile) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < amount) {
+            if (channel.read(buffer) < 0) {
+                endOfFile = true;
+                break;
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,142 @@
+package connectgame.records;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <h4>GameRecordWriter</h4>
+ * <p>
+ * Appends games to a game-record file (see {@link RecordFormat} for the
+ * layout), creating it if needed. Records are encoded into a direct buffer
+ * and written to the file channel in large blocks, so logging a game usually
+ * costs no system call at all. Games are only guaranteed to be in the file
+ * after {@code flush()} or {@code close()}.
+ * <p>
+ * This class is thread safe, so one writer can log the games of every
+ * session.
+ */
+public class GameRecordWriter implements Closeable, Flushable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final int columns;
+    private final int rows;
+    private final int toWin;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private ByteBuffer body = ByteBuffer.allocate(1024); // Scratch space for one record.
+    private long gamesWritten = 0;
+
+    /**
+     * Opens a game-record file for appending, writing the header if it is new.
+     *
+     * @param path    The file.
+     * @param columns The amount of columns of the games that will be written.
+     * @param rows    The amount of rows of the games.
+     * @param toWin   The amount in a row needed to win the games.
+     * @throws IOException if the file can't be opened, or already holds games
+     *                     of a different board size.
+     */
+    public GameRecordWriter(Path path, int columns, int rows, int toWin) throws IOException {
+        this.columns = columns;
+        this.rows = rows;
+        this.toWin = toWin;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ);
+        try {
+            if (channel.size() == 0) {
+                RecordFormat.writeHeader(buffer, columns, rows, toWin);
+                drain(); // So the file is valid straight away.
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(RecordFormat.HEADER_SIZE);
+                while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                    // Keep reading
+                }
+                header.flip();
+                int[] size = RecordFormat.readHeader(header);
+                if (size[0] != columns || size[1] != rows || size[2] != toWin) {
+                    throw new IOException("The file holds games of a different board size.");
+                }
+            }
+            channel.position(channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a game.
+     *
+     * @throws IllegalArgumentException if the game's board size doesn't match
+     *                                  the file.
+     */
+    public synchronized void write(GameRecord record) throws IOException {
+        if (record.getColumns() != columns || record.getRows() != rows || record.getToWin() != toWin) {
+            throw new IllegalArgumentException("The game's board size doesn't match the file.");
+        }
+        int maxSize = RecordFormat.maxBodySize(record);
+        if (maxSize > body.capacity()) {
+            body = ByteBuffer.allocate(Math.max(maxSize, body.capacity() * 2));
+        }
+        body.clear();
+        RecordFormat.writeBody(body, record);
+        body.flip();
+        if (buffer.remaining() < RecordFormat.MAX_VARINT_BYTES + body.remaining()) {
+            drain();
+        }
+        RecordFormat.putVarint(buffer, body.remaining());
+        if (body.remaining() > buffer.remaining()) {
+            drain(); // The record is bigger than the buffer, so write it straight out.
+            writeFully(body);
+        } else {
+            buffer.put(body);
+        }
+        gamesWritten++;
+    }
+
+    /**
+     * Returns the amount of games written by this writer.
+     */
+    public synchronized long getGamesWritten() {
+        return gamesWritten;
+    }
+
+    /**
+     * Writes any buffered games to the file.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        drain();
+    }
+
+    /**
+     * Writes any buffered games to the file and closes it.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package connectgame.records;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import connectgame.engine.GameBoard;
+
+/**
+ * <h4>PositionIndexBuilder</h4>
+ * <p>
+ * Builds a {@link PositionIndex} for a game-record file with an external
+ * sort, so the archive can be much bigger than the heap:
+ * <ol>
+ * <li>The games are streamed and replayed on a GameBoard, and every position
+ * reached (including the empty board) becomes a (canonical key, game offset
+ * and result) pair.</li>
+ * <li>The pairs are collected in fixed size chunks, and each chunk is sorted
+ * and written to a temporary run file.</li>
+ * <li>The runs are merged, counting the results of each position, into the
+ * sorted sections of the index file.</li>
+ * </ol>
+ * The heap used is about 16 bytes per pair in a chunk, plus a buffer per run.
+ */
+public class PositionIndexBuilder {
+    /**
+     * The default amount of pairs sorted in memory at a time (64MB).
+     */
+    public static final int DEFAULT_RUN_PAIRS = 1 << 22;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int INSERTION_SORT_SIZE = 16;
+
+    private final int runPairs;
+    private final long[] keys;
+    private final long[] values; // Game offset << 2 | result.
+    private int pairCount = 0;
+    private final List<Path> runs = new ArrayList<>();
+    private Path tempDirectory;
+
+    // Totals of the last build
+    private long games;
+    private long positions;
+    private long gameRefs;
+
+    /**
+     * Constructs a new PositionIndexBuilder.
+     *
+     * @param runPairs The amount of pairs to sort in memory at a time.
+     */
+    public PositionIndexBuilder(int runPairs) {
+        this.runPairs = runPairs;
+        this.keys = new long[runPairs];
+        this.values = new long[runPairs];
+    }
+
+    /**
+     * Builds the index for a game-record file. Temporary files are put next to
+     * the index.
+     *
+     * @param records The game-record file.
+     * @param index   The index file to create (replacing any old one).
+     */
+    public void build(Path records, Path index) throws IOException {
+        Path parent = index.toAbsolutePath().getParent();
+        tempDirectory = Files.createTempDirectory(parent, "index-runs");
+        try (GameRecordReader reader = new GameRecordReader(records)) {
+            games = 0;
+            GameRecord game = reader.newRecord();
+            GameBoard board = new GameBoard(reader.getColumns(), reader.getRows(), reader.getToWin());
+            while (reader.next(game)) {
+                games++;
+                final long value = reader.getRecordOffset() << 2 | game.getResult();
+                board.clearBoard();
+                add(board.getCanonicalKey(), value);
+                int disk = GameBoard.RED;
+                for (int i = 0; i < game.getMoveCount(); i++) {
+                    board.putDisk(disk, game.getMove(i));
+                    add(board.getCanonicalKey(), value);
+                    disk = 3 - disk;
+                }
+            }
+            if (pairCount > 0) {
+                writeRun();
+            }
+            merge(index, reader.getColumns(), reader.getRows(), reader.getToWin());
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            runs.clear();
+            Files.deleteIfExists(tempDirectory);
+        }
+    }
+
+    /**
+     * Returns the amount of games indexed by the last build.
+     */
+    public long getGames() {
+        return games;
+    }
+
+    /**
+     * Returns the amount of different positions indexed by the last build.
+     */
+    public long getPositions() {
+        return positions;
+    }
+
+    /**
+     * Returns the amount of (position, game) pairs indexed by the last build.
+     */
+    public long getGameRefs() {
+        return gameRefs;
+    }
+
+    private void add(long key, long value) throws IOException {
+        keys[pairCount] = key;
+        values[pairCount] = value;
+        if (++pairCount == runPairs) {
+            writeRun();
+        }
+    }
+
+    /**
+     * Sorts the current chunk of pairs and writes it to a new run file.
+     */
+    private void writeRun() throws IOException {
+        sort(0, pairCount - 1);
+        Path run = Files.createTempFile(tempDirectory, "run", ".tmp");
+        runs.add(run);
+        try (Output out = new Output(run)) {
+            for (int i = 0; i < pairCount; i++) {
+                out.putLong(keys[i]);
+                out.putLong(values[i]);
+            }
+        }
+        pairCount = 0;
+    }
+
+    /**
+     * Merges the runs into the index file.
+     */
+    private void merge(Path index, int columns, int rows, int toWin) throws IOException {
+        Path keysFile = Files.createTempFile(tempDirectory, "keys", ".tmp");
+        Path refsFile = Files.createTempFile(tempDirectory, "refs", ".tmp");
+        try {
+            merge(index, columns, rows, toWin, keysFile, refsFile);
+        } finally {
+            Files.deleteIfExists(keysFile);
+            Files.deleteIfExists(refsFile);
+        }
+    }
+
+    /**
+     * Merges the runs into the keys and game refs sections (in temporary
+     * files), then puts the index file together.
+     */
+    private void merge(Path index, int columns, int rows, int toWin, Path keysFile, Path refsFile)
+            throws IOException {
+        long[] fences = new long[16];
+        int fenceCount = 0;
+        positions = 0;
+        gameRefs = 0;
+        PriorityQueue<Run> queue = new PriorityQueue<>();
+        try (Output keysOut = new Output(keysFile); Output refsOut = new Output(refsFile)) {
+            for (Path path : runs) {
+                Run run = new Run(path);
+                if (run.next()) {
+                    queue.add(run);
+                } else {
+                    run.close();
+                }
+            }
+            long key = 0;
+            long firstRef = 0;
+            int[] counts = new int[4]; // By result
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                if (gameRefs == 0 || run.key != key) {
+                    if (gameRefs > 0) {
+                        writeKey(keysOut, key, firstRef, counts);
+                    }
+                    if (positions % PositionIndex.FENCE_INTERVAL == 0) {
+                        if (fenceCount == fences.length) {
+                            fences = Arrays.copyOf(fences, fenceCount * 2);
+                        }
+                        fences[fenceCount++] = run.key;
+                    }
+                    positions++;
+                    key = run.key;
+                    firstRef = gameRefs;
+                    Arrays.fill(counts, 0);
+                }
+                refsOut.putLong(run.value >>> 2);
+                counts[(int) (run.value & 3)]++;
+                gameRefs++;
+                if (run.next()) {
+                    queue.add(run);
+                } else {
+                    run.close();
+                }
+            }
+            if (gameRefs > 0) {
+                writeKey(keysOut, key, firstRef, counts);
+            }
+        } finally {
+            for (Run run : queue) {
+                run.close();
+            }
+        }
+
+        // Put the sections together.
+        long fencesBytes = (fenceCount * 8L + PositionIndex.KEY_ENTRY_SIZE - 1) / PositionIndex.KEY_ENTRY_SIZE
+                * PositionIndex.KEY_ENTRY_SIZE;
+        long fencesOffset = PositionIndex.HEADER_SIZE;
+        long keysOffset = fencesOffset + fencesBytes;
+        long refsOffset = keysOffset + positions * PositionIndex.KEY_ENTRY_SIZE;
+        Files.deleteIfExists(index);
+        try (Output out = new Output(index)) {
+            out.put(PositionIndex.MAGIC);
+            out.put(new byte[] { PositionIndex.VERSION, (byte) columns, (byte) rows, (byte) toWin });
+            out.putLong(positions);
+            out.putLong(gameRefs);
+            out.putLong(fencesOffset);
+            out.putLong(keysOffset);
+            out.putLong(refsOffset);
+            out.put(new byte[PositionIndex.HEADER_SIZE - 48]);
+            for (int i = 0; i < fenceCount; i++) {
+                out.putLong(fences[i]);
+            }
+            out.put(new byte[(int) (fencesBytes - fenceCount * 8L)]);
+            out.append(keysFile);
+            out.append(refsFile);
+        }
+    }
+
+    private static void writeKey(Output out, long key, long firstRef, int[] counts) throws IOException {
+        out.putLong(key);
+        out.putLong(firstRef);
+        out.putInt(counts[GameBoard.RED]);
+        out.putInt(counts[GameBoard.YELLOW]);
+        out.putInt(counts[3]);
+        out.putInt(counts[0]);
+    }
+
+    /**
+     * Sorts the pairs from {@code low} to {@code high} (inclusive) by key, then
+     * value (a quicksort, as the keys and values are in separate arrays).
+     */
+    private void sort(int low, int high) {
+        while (high - low > INSERTION_SORT_SIZE) {
+            int middle = (low + high) >>> 1;
+            long pivotKey = keys[middle];
+            long pivotValue = values[middle];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(keys[i], values[i], pivotKey, pivotValue) < 0) {
+                    i++;
+                }
+                while (compare(keys[j], values[j], pivotKey, pivotValue) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // Recurse into the smaller half, and loop on the bigger one.
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compare(keys[j - 1], values[j - 1], keys[j], values[j]) > 0; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private static int compare(long key1, long value1, long key2, long value2) {
+        return (key1 != key2) ? Long.compare(key1, key2) : Long.compare(value1, value2);
+    }
+
+    private void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    /**
+     * A buffered writer to a file channel.
+     */
+    private static class Output implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Output(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void putLong(long value) throws IOException {
+            if (buffer.remaining() < 8) {
+                drain();
+            }
+            buffer.putLong(value);
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                drain();
+            }
+            buffer.putInt(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            for (byte b : bytes) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                buffer.put(b);
+            }
+        }
+
+        /**
+         * Copies a whole file onto the end of this one.
+         */
+        void append(Path path) throws IOException {
+            drain();
+            try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, channel);
+                }
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * A sorted run being merged, positioned at its current pair.
+     */
+    private static class Run implements Comparable<Run>, Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long key;
+        long value;
+
+        Run(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            buffer.flip(); // Empty
+        }
+
+        /**
+         * Moves to the next pair, returning {@code false} at the end of the run.
+         */
+        boolean next() throws IOException {
+            if (buffer.remaining() < 16) {
+                buffer.compact();
+                while (buffer.position() < 16 && channel.read(buffer) >= 0) {
+                    // Keep reading
+                }
+                buffer.flip();
+                if (buffer.remaining() < 16) {
+                    return false;
+                }
+            }
+            key = buffer.getLong();
+            value = buffer.getLong();
+            return true;
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            return compare(key, value, other.key, other.value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
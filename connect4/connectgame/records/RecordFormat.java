@@ -0,0 +1,181 @@
+package connectgame.records;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <h4>RecordFormat</h4>
+ * <p>
+ * The layout of a game-record file, shared by {@link GameRecordWriter} and
+ * {@link GameRecordReader}. A file is append only: an 8 byte header, then
+ * one record per game, each starting with its length so a reader can check
+ * (or skip) it.
+ *
+ * <pre>
+ * header:  'C' '4' 'G' 'R'  version  columns  rows  toWin        (1 byte each)
+ * record:  length                                                (varint, bytes after it)
+ *          moveCount                                             (varint)
+ *          result                                                (1 byte)
+ *          moves       2 per byte, first in the low nibble, if columns &lt;= 16,
+ *                      otherwise 1 per byte
+ *          statsFlags  1 bit per move (move i is bit i % 8 of byte i / 8)
+ *          stats       for each flagged move: score (zigzag varint), depth,
+ *                      nodes and time in microseconds (varints)
+ * </pre>
+ *
+ * A typical 7x6 game of about 21 moves takes 17 bytes without stats, and
+ * each engine move with stats adds about 7 bytes.
+ */
+final class RecordFormat {
+    static final byte[] MAGIC = { 'C', '4', 'G', 'R' };
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int MAX_NIBBLE_COLUMNS = 16; // Boards up to this wide pack 2 moves per byte.
+    static final int MAX_VARINT_BYTES = 10;
+
+    private RecordFormat() {
+    }
+
+    /**
+     * Writes the file header.
+     */
+    static void writeHeader(ByteBuffer buffer, int columns, int rows, int toWin) {
+        buffer.put(MAGIC).put((byte) VERSION).put((byte) columns).put((byte) rows).put((byte) toWin);
+    }
+
+    /**
+     * Reads and checks the file header, and returns the board size as
+     * {columns, rows, toWin}.
+     */
+    static int[] readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new IOException("Not a game-record file (too short).");
+        }
+        for (byte magicByte : MAGIC) {
+            if (buffer.get() != magicByte) {
+                throw new IOException("Not a game-record file.");
+            }
+        }
+        int version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported game-record version: " + version);
+        }
+        return new int[] { buffer.get() & 0xFF, buffer.get() & 0xFF, buffer.get() & 0xFF };
+    }
+
+    /**
+     * Encodes a record's body (everything after the length).
+     */
+    static void writeBody(ByteBuffer buffer, GameRecord record) {
+        final int moveCount = record.getMoveCount();
+        putVarint(buffer, moveCount);
+        buffer.put((byte) record.getResult());
+        if (record.getColumns() <= MAX_NIBBLE_COLUMNS) {
+            for (int i = 0; i < moveCount; i += 2) {
+                int high = (i + 1 < moveCount) ? record.getMove(i + 1) << 4 : 0;
+                buffer.put((byte) (record.getMove(i) | high));
+            }
+        } else {
+            for (int i = 0; i < moveCount; i++) {
+                buffer.put((byte) record.getMove(i));
+            }
+        }
+        for (int i = 0; i < moveCount; i += 8) {
+            int flags = 0;
+            for (int bit = 0; bit < 8 && i + bit < moveCount; bit++) {
+                if (record.hasStats(i + bit)) {
+                    flags |= 1 << bit;
+                }
+            }
+            buffer.put((byte) flags);
+        }
+        for (int i = 0; i < moveCount; i++) {
+            if (record.hasStats(i)) {
+                int score = record.getScore(i);
+                putVarint(buffer, ((score << 1) ^ (score >> 31)) & 0xFFFFFFFFL); // Zigzag, so small negatives stay small.
+                putVarint(buffer, record.getDepth(i));
+                putVarint(buffer, record.getNodes(i));
+                putVarint(buffer, record.getTimeMicros(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the largest amount of bytes {@code writeBody} can use.
+     */
+    static int maxBodySize(GameRecord record) {
+        final int moveCount = record.getMoveCount();
+        return MAX_VARINT_BYTES + 1 + moveCount + (moveCount + 7) / 8 + moveCount * 4 * MAX_VARINT_BYTES;
+    }
+
+    /**
+     * Decodes a record's body (of exactly {@code length} bytes) into the given
+     * record, replacing what it held.
+     */
+    static void readBody(ByteBuffer buffer, int length, GameRecord record) throws IOException {
+        final int end = buffer.position() + length;
+        record.clear();
+        final int moveCount = (int) getVarint(buffer);
+        final int result = buffer.get();
+        if (moveCount < 0 || moveCount > length * 2 || result < 0 || result > 3) {
+            throw new IOException("Corrupt game record.");
+        }
+        record.ensureCapacity(moveCount);
+        try {
+            if (record.getColumns() <= MAX_NIBBLE_COLUMNS) {
+                for (int i = 0; i < moveCount; i += 2) {
+                    int packed = buffer.get();
+                    record.addMove(packed & 0xF);
+                    if (i + 1 < moveCount) {
+                        record.addMove((packed >>> 4) & 0xF);
+                    }
+                }
+            } else {
+                for (int i = 0; i < moveCount; i++) {
+                    record.addMove(buffer.get() & 0xFF);
+                }
+            }
+            final int flagsStart = buffer.position();
+            buffer.position(flagsStart + (moveCount + 7) / 8);
+            for (int i = 0; i < moveCount; i++) {
+                if ((buffer.get(flagsStart + i / 8) & (1 << (i % 8))) != 0) {
+                    long zigzag = getVarint(buffer);
+                    int score = (int) (zigzag >>> 1) ^ -(int) (zigzag & 1);
+                    record.setStats(i, score, (int) getVarint(buffer), getVarint(buffer), getVarint(buffer));
+                }
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt game record.", e);
+        }
+        record.setResult(result);
+        if (buffer.position() != end) {
+            throw new IOException("Corrupt game record (length mismatch).");
+        }
+    }
+
+    /**
+     * Writes an unsigned varint (7 bits per byte, low bits first).
+     */
+    static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned varint.
+     */
+    static long getVarint(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt varint.");
+    }
+}
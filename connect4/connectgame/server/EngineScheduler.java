@@ -0,0 +1,386 @@
+package connectgame.server;
+
+import java.io.Closeable;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import connectgame.engine.ConnectN;
+import connectgame.engine.Search;
+import connectgame.engine.SearchResult;
+
+/**
+ * <h4>EngineScheduler</h4>
+ * <p>
+ * Shares a fixed set of engine threads between lots of searches at once (e.g.
+ * the computer moves of many sessions), so that every search gets a fair share
+ * of the cores and returns by its deadline, instead of each one searching flat
+ * out on a thread of its own.
+ * <p>
+ * A search request has a deadline and a priority. The threads work in slices:
+ * a slice searches one request with iterative deepening until it has visited
+ * {@code sliceNodes} positions (or its deadline comes), then the request goes
+ * back in the queue. The next slice goes to the waiting request with the
+ * highest priority, then the fewest slices so far, then the earliest deadline,
+ * so requests of the same priority take turns. A new slice starts again from
+ * depth 0, but the game's transposition table still has the work of the last
+ * one, so it quickly gets back to where it was.
+ * <p>
+ * Every request gets the result of the deepest search that finished, as soon
+ * as it searches to its depth (or finds a certain result), or at its deadline
+ * at the latest. A depth 0 search is done when the request is submitted, so
+ * there is a move even if the request never gets a slice.
+ * <p>
+ * The statistics ({@code stats()}) are the queueing delay (from submitting a
+ * request to its first slice), and the deadline misses: requests cut short by
+ * their deadline (of which {@code starved} never got a slice) and requests
+ * answered late (more than {@code LATE_MILLIS} after their deadline).
+ */
+public class EngineScheduler implements Closeable {
+    public static final int LOW = -1;
+    public static final int NORMAL = 0;
+    public static final int HIGH = 1;
+    public static final long DEFAULT_SLICE_NODES = 20_000; // Roughly 10-20ms
+    private static final long LATE_MILLIS = 5;
+    private static final int MAX_DELAY_MS = 10_000;
+
+    private final long sliceNodes;
+    private final int capacity;
+    private final PriorityBlockingQueue<Request> ready;
+    private final Thread[] threads;
+    private final ScheduledThreadPoolExecutor timer;
+    private final AtomicInteger pending = new AtomicInteger(); // Requests not answered yet.
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Statistics
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder answered = new LongAdder();
+    private final LongAdder slices = new LongAdder();
+    private final LongAdder cutShort = new LongAdder();
+    private final LongAdder starved = new LongAdder();
+    private final LongAdder late = new LongAdder();
+    private final AtomicLong maxLateMicros = new AtomicLong();
+    private final AtomicLongArray queueDelays = new AtomicLongArray(MAX_DELAY_MS + 1); // Histogram, 1ms buckets
+    private final LongAdder queueDelayMicros = new LongAdder();
+    private final AtomicLong maxQueueDelayMicros = new AtomicLong();
+
+    /**
+     * A search request, waiting, being searched, or answered.
+     */
+    private class Request {
+        final ConnectN game;
+        final int maxDepth;
+        final long maxNodes;
+        final int priority;
+        final long deadline; // System.nanoTime()
+        final long submitTime;
+        final long sequence;
+        final CompletableFuture<SearchResult> future = new CompletableFuture<>();
+        volatile SearchResult best; // The deepest finished search so far.
+        volatile long nodes;
+        int slices = 0; // Only changed while the request is out of the queue.
+        // Guarded by this, so the future is only completed when no slice is using the game.
+        boolean searching = false;
+        boolean expired = false;
+        volatile ScheduledFuture<?> timeout; // null until scheduled
+
+        Request(ConnectN game, int maxDepth, long maxNodes, int priority, long deadline) {
+            this.game = game;
+            this.maxDepth = maxDepth;
+            this.maxNodes = maxNodes;
+            this.priority = priority;
+            this.deadline = deadline;
+            this.submitTime = System.nanoTime();
+            this.sequence = EngineScheduler.this.sequence.getAndIncrement();
+        }
+
+        /**
+         * Keeps the result of a finished depth if it is at least as deep as the
+         * best so far.
+         */
+        void improve(SearchResult result) {
+            SearchResult current = best;
+            if (current == null || result.getDepth() >= current.getDepth()) {
+                best = result;
+            }
+        }
+
+        /**
+         * Whether the best result can't get any better.
+         */
+        boolean isFinished() {
+            SearchResult current = best;
+            return current.getDepth() >= maxDepth || Math.abs(current.getScore()) > Search.WIN
+                    || maxNodes > 0 && nodes >= maxNodes;
+        }
+
+        /**
+         * Called by the timer at the deadline: answers straight away unless a
+         * slice is running, which will answer when it stops (at the deadline).
+         * Either way no slice starts after this.
+         */
+        void expire() {
+            synchronized (this) {
+                expired = true;
+                if (searching) {
+                    return;
+                }
+            }
+            answer();
+        }
+
+        /**
+         * Completes the future with the best result so far, with the nodes of
+         * every slice.
+         */
+        void answer() {
+            SearchResult current = best;
+            SearchResult result = new SearchResult(current.getBestMove(), current.getScore(), current.getDepth(),
+                    nodes, current.getPrincipalVariation(), true);
+            if (!future.complete(result)) {
+                return; // Already answered (or cancelled).
+            }
+            answered.increment();
+            if (!isFinished()) {
+                cutShort.increment();
+                if (slices == 0) {
+                    starved.increment();
+                }
+            }
+            long lateMicros = (System.nanoTime() - deadline) / 1000;
+            if (lateMicros > LATE_MILLIS * 1000) {
+                late.increment();
+            }
+            maxLateMicros.accumulateAndGet(lateMicros, Math::max);
+        }
+    }
+
+    /**
+     * Constructs a new EngineScheduler and starts its threads.
+     *
+     * @param threads    The amount of engine threads (usually one per core).
+     * @param sliceNodes The positions a request may search before the next one
+     *                   gets a turn.
+     * @param capacity   The maximum amount of requests not answered yet.
+     */
+    public EngineScheduler(int threads, long sliceNodes, int capacity) {
+        this.sliceNodes = sliceNodes;
+        this.capacity = capacity;
+        this.ready = new PriorityBlockingQueue<>(64, Comparator.<Request>comparingInt(request -> -request.priority)
+                .thenComparingInt(request -> request.slices)
+                .thenComparingLong(request -> request.deadline)
+                .thenComparingLong(request -> request.sequence));
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "engine-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        this.threads = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            this.threads[i] = new Thread(this::work, "engine-" + (i + 1));
+            this.threads[i].setDaemon(true);
+            this.threads[i].start();
+        }
+    }
+
+    /**
+     * Submits a search of the position in the game for the disk whose turn it
+     * is. The game (its settings and transposition table) is used by the
+     * search, so it must not be changed until the future is done. Cancelling
+     * the future gives up on the request, but a slice already running only
+     * stops at the end of the slice.
+     *
+     * @param game       The game to search. It must not be over.
+     * @param maxDepth   The deepest depth to search (as in {@code setDepth}).
+     * @param timeMillis The deadline, in milliseconds from now.
+     * @param maxNodes   The most positions to search in all, or 0 for no limit.
+     * @param priority   Higher priorities get their slices first (e.g.
+     *                   {@code NORMAL}).
+     * @return The result of the deepest search that finished in time, with the
+     *         nodes of all of them.
+     * @throws RejectedExecutionException if there are already
+     *                                    {@code capacity} requests not
+     *                                    answered.
+     */
+    public CompletableFuture<SearchResult> submit(ConnectN game, int maxDepth, long timeMillis, long maxNodes,
+            int priority) {
+        if (game.getWinner() != 0) {
+            throw new IllegalArgumentException("The game is over.");
+        }
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            rejected.increment();
+            throw new RejectedExecutionException("Too many search requests.");
+        }
+        submitted.increment();
+        int empty = game.columns() * game.rows() - game.getHistory().size();
+        Request request = new Request(game, Math.min(maxDepth, empty - 1), maxNodes, priority,
+                System.nanoTime() + timeMillis * 1000000);
+        request.best = game.search(0, 0, 0, null); // So there is always a move.
+        request.nodes = request.best.getNodes();
+        request.future.whenComplete((result, failure) -> {
+            pending.decrementAndGet();
+            ScheduledFuture<?> timeout = request.timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            ready.remove(request);
+        });
+        if (request.isFinished()) {
+            request.answer();
+            return request.future;
+        }
+        request.timeout = timer.schedule(request::expire, timeMillis, TimeUnit.MILLISECONDS);
+        ready.add(request);
+        return request.future;
+    }
+
+    /**
+     * Runs slices until the scheduler is closed.
+     */
+    private void work() {
+        try {
+            while (true) {
+                Request request = ready.take();
+                synchronized (request) {
+                    if (request.future.isDone() || request.expired) {
+                        continue;
+                    }
+                    request.searching = true;
+                }
+                try {
+                    runSlice(request);
+                } catch (RuntimeException e) {
+                    // The request fails, but the thread carries on with the others.
+                    synchronized (request) {
+                        request.searching = false;
+                    }
+                    request.future.completeExceptionally(e);
+                }
+                if (Thread.interrupted()) {
+                    break; // Closed during the slice.
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * Searches a request for a slice, then answers it or puts it back in the
+     * queue.
+     */
+    private void runSlice(Request request) {
+        long now = System.nanoTime();
+        if (request.slices == 0) {
+            long delayMicros = (now - request.submitTime) / 1000;
+            queueDelays.incrementAndGet((int) Math.min(delayMicros / 1000, MAX_DELAY_MS));
+            queueDelayMicros.add(delayMicros);
+            maxQueueDelayMicros.accumulateAndGet(delayMicros, Math::max);
+        }
+        request.slices++;
+        slices.increment();
+        long quota = sliceNodes;
+        if (request.maxNodes > 0) {
+            quota = Math.min(quota, request.maxNodes - request.nodes);
+        }
+        // Rounded up, as a limit of 0 would mean none.
+        long timeMillis = Math.max((request.deadline - now + 999999) / 1000000, 1);
+        SearchResult result = request.game.search(request.maxDepth, timeMillis, quota, request::improve);
+        if (result == null) {
+            throw new IllegalStateException("The game was changed while it was being searched.");
+        }
+        request.nodes += result.getNodes();
+        boolean answer;
+        synchronized (request) {
+            request.searching = false;
+            answer = request.expired || request.isFinished() || System.nanoTime() >= request.deadline;
+        }
+        if (answer) {
+            request.answer();
+        } else if (!request.future.isDone()) {
+            ready.add(request);
+        }
+    }
+
+    /**
+     * Returns the amount of requests waiting for a slice.
+     */
+    public int queued() {
+        return ready.size();
+    }
+
+    /**
+     * Returns the statistics as a single line (times in milliseconds).
+     */
+    public String stats() {
+        long started = 0;
+        for (int i = 0; i <= MAX_DELAY_MS; i++) {
+            started += queueDelays.get(i);
+        }
+        return "requests=" + submitted.sum()
+                + " answered=" + answered.sum()
+                + " pending=" + pending.get()
+                + " rejected=" + rejected.sum()
+                + " slices=" + slices.sum()
+                + " queueDelayMean=" + String.format("%.2f",
+                        queueDelayMicros.sum() / 1000.0 / Math.max(started, 1))
+                + " queueDelayP50=" + delayPercentile(started, 0.5)
+                + " queueDelayP99=" + delayPercentile(started, 0.99)
+                + " queueDelayMax=" + String.format("%.2f", maxQueueDelayMicros.get() / 1000.0)
+                + " cutShort=" + cutShort.sum()
+                + " starved=" + starved.sum()
+                + " late=" + late.sum()
+                + " maxLate=" + String.format("%.2f", maxLateMicros.get() / 1000.0);
+    }
+
+    /**
+     * Returns the queueing delay (in whole milliseconds) that the given
+     * fraction of the started requests were within.
+     */
+    private long delayPercentile(long started, double fraction) {
+        long target = (long) Math.ceil(started * fraction);
+        long count = 0;
+        for (int i = 0; i <= MAX_DELAY_MS; i++) {
+            count += queueDelays.get(i);
+            if (count >= target && count > 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stops the engine threads. Requests not answered yet are answered with
+     * their best results so far.
+     */
+    @Override
+    public void close() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        timer.shutdownNow();
+        Request request;
+        while ((request = ready.poll()) != null) {
+            request.answer();
+        }
+    }
+}
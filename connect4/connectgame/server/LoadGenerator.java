@@ -0,0 +1,205 @@
+package connectgame.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import connectgame.engine.FastRandom;
+import connectgame.engine.GameBoard;
+
+/**
+ * <h4>LoadGenerator</h4>
+ * <p>
+ * A load generator for {@link SessionServer}. It opens the given amount of
+ * connections, waits until they are all open (so they really are concurrent),
+ * then each one plays games with random moves until the time is up. It
+ * reports how many sessions were open at once, the request rate, the latency
+ * percentiles and any errors.
+ * <p>
+ * Usage:
+ * {@code LoadGenerator [sessions] [seconds] [pvc|pvr|pvp] [port] [thinkMillis]}
+ * <p>
+ * For example {@code LoadGenerator 10000 30 pvc}. The think time is a pause
+ * before each move, like a real player, which keeps the sessions mostly idle.
+ * When running 10k+ sessions on one box, the open file limit
+ * ({@code ulimit -n}) has to be high enough for both ends.
+ */
+public class LoadGenerator {
+    private static final int MAX_LATENCY_MS = 10_000;
+
+    private final AtomicLongArray latencies = new AtomicLongArray(MAX_LATENCY_MS + 1); // Histogram, 1ms buckets
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicInteger connected = new AtomicInteger();
+
+    public static void main(String[] args) throws InterruptedException {
+        int sessions = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000;
+        double seconds = (args.length > 1) ? Double.parseDouble(args[1]) : 30;
+        String mode = (args.length > 2) ? args[2] : "pvc";
+        int port = (args.length > 3) ? Integer.parseInt(args[3]) : SessionServer.DEFAULT_PORT;
+        long thinkMillis = (args.length > 4) ? Long.parseLong(args[4]) : 100;
+        new LoadGenerator().run(sessions, seconds, mode, port, thinkMillis);
+    }
+
+    /**
+     * Runs the load test and prints the report.
+     */
+    public void run(int sessions, double seconds, String mode, int port, long thinkMillis)
+            throws InterruptedException {
+        ExecutorService clients = SessionServer.newPerTaskExecutor("client");
+        CountDownLatch allConnected = new CountDownLatch(sessions);
+        CountDownLatch finished = new CountDownLatch(sessions);
+        long[] endTime = new long[1];
+        for (int i = 0; i < sessions; i++) {
+            clients.execute(() -> {
+                try {
+                    client(mode, port, thinkMillis, allConnected, endTime);
+                } catch (IOException e) {
+                    errors.increment();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+        allConnected.await();
+        System.out.println("Sessions open at once: " + connected.get() + "/" + sessions
+                + (SessionServer.hasVirtualThreads() ? " (virtual threads)" : " (platform threads)"));
+        long startTime = System.nanoTime();
+        synchronized (endTime) {
+            endTime[0] = startTime + (long) (seconds * 1e9);
+            endTime.notifyAll();
+        }
+        finished.await();
+        double elapsed = (System.nanoTime() - startTime) / 1e9;
+        clients.shutdown();
+        System.out.printf("Requests: %d (%.0f/s)  Games finished: %d  Busy: %d  Errors: %d%n",
+                requests.sum(), requests.sum() / elapsed, games.sum(), busy.sum(), errors.sum());
+        System.out.printf("Latency ms: p50 %d  p90 %d  p99 %d  max %s%n",
+                percentile(0.5), percentile(0.9), percentile(0.99), maxLatency());
+    }
+
+    /**
+     * A single client: connects, waits for everyone else to connect, then plays
+     * random games until the time is up.
+     */
+    private void client(String mode, int port, long thinkMillis, CountDownLatch allConnected, long[] endTime)
+            throws IOException, InterruptedException {
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        } catch (IOException e) {
+            allConnected.countDown();
+            throw e;
+        }
+        connected.incrementAndGet();
+        allConnected.countDown();
+        long end;
+        synchronized (endTime) {
+            while (endTime[0] == 0) {
+                endTime.wait();
+            }
+            end = endTime[0];
+        }
+        FastRandom random = new FastRandom(System.nanoTime());
+        try (socket;
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                PrintWriter out = new PrintWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII), false)) {
+            GameBoard board = null;
+            int turn = GameBoard.RED;
+            while (System.nanoTime() < end) {
+                if (board == null) {
+                    String response = request(in, out, "NEW " + mode + " red");
+                    if (response.startsWith("ERR")) {
+                        continue;
+                    }
+                    board = new GameBoard(7, 6, 4);
+                    turn = GameBoard.RED;
+                    continue;
+                }
+                Thread.sleep(thinkMillis);
+                int column = board.getRandomLegal(random);
+                String response = request(in, out, "PLAY " + (column + 1));
+                if (!response.startsWith("MOVE")) {
+                    continue;
+                }
+                String[] words = response.split(" ");
+                board.putDisk(turn, column);
+                turn = 3 - turn;
+                int reply = Integer.parseInt(words[1]);
+                if (reply > 0) {
+                    board.putDisk(turn, reply - 1);
+                    turn = 3 - turn;
+                }
+                if (!words[2].equals("0")) {
+                    games.increment();
+                    board = null;
+                }
+            }
+            request(in, out, "QUIT");
+        }
+    }
+
+    /**
+     * Sends a command and returns the response, recording the latency.
+     */
+    private String request(BufferedReader in, PrintWriter out, String command) throws IOException {
+        long startTime = System.nanoTime();
+        out.print(command);
+        out.print('\n');
+        out.flush();
+        String response = in.readLine();
+        if (response == null) {
+            throw new IOException("The server closed the connection.");
+        }
+        long ms = (System.nanoTime() - startTime) / 1000000;
+        latencies.incrementAndGet((int) Math.min(ms, MAX_LATENCY_MS));
+        requests.increment();
+        if (response.equals("ERR busy")) {
+            busy.increment();
+        } else if (response.startsWith("ERR")) {
+            errors.increment();
+        }
+        return response;
+    }
+
+    /**
+     * Returns the latency (in ms) that the given fraction of requests were
+     * faster than or equal to.
+     */
+    private long percentile(double fraction) {
+        long total = requests.sum();
+        long seen = 0;
+        for (int i = 0; i <= MAX_LATENCY_MS; i++) {
+            seen += latencies.get(i);
+            if (seen >= fraction * total) {
+                return i;
+            }
+        }
+        return MAX_LATENCY_MS;
+    }
+
+    private String maxLatency() {
+        for (int i = MAX_LATENCY_MS; i >= 0; i--) {
+            if (latencies.get(i) > 0) {
+                return (i == MAX_LATENCY_MS) ? ">" + i : Integer.toString(i);
+            }
+        }
+        return "0";
+    }
+}
@@ -0,0 +1,500 @@
+package connectgame.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import connectgame.engine.Connect4;
+import connectgame.engine.GameBoard;
+import connectgame.engine.Search;
+import connectgame.engine.SearchResult;
+import connectgame.tools.EngineConfig;
+
+/**
+ * <h4>SearchCoordinator</h4>
+ * <p>
+ * A search spread over several worker processes (see {@link SearchWorker}) on
+ * this machine, each with its own JVM, heap and transposition table, so a big
+ * analysis isn't limited by the memory bandwidth and garbage collection of a
+ * single JVM.
+ * <p>
+ * The coordinator expands the top {@code splitPlies} plies of the tree itself
+ * (e.g. every position 4 plies from the root), and sends each position at the
+ * bottom to a worker as a job, with the rest of the depth. The results are
+ * combined by minimax, keeping the bounds each subtree's score is known to be
+ * within. The alpha-beta bounds are shared through the coordinator: each job
+ * is sent with the narrowest window the results so far allow (like the window
+ * a sequential search would give it), and once a result shows a job can't
+ * change the score at the root any more (a sibling of one of its ancestors
+ * caused a cutoff), it is cancelled on its worker. Jobs are handed out in the
+ * tree's move order (best moves first), one per worker at a time.
+ * <p>
+ * The workers are started as local processes with the same Java and class
+ * (or module) path as this one, and connect back over the loopback address.
+ * <p>
+ * Usage:
+ * {@code SearchCoordinator <workers> <depth> [moves] [splitPlies] [engineConfig]},
+ * e.g. {@code SearchCoordinator 4 16 4435 4 minimax:eval=true}. It searches the
+ * position after the moves (columns from 1; "-" for the empty board) with the
+ * workers, then again in this process alone, and prints both.
+ */
+public class SearchCoordinator implements Closeable {
+    public static final int DEFAULT_SPLIT_PLIES = 4;
+    private static final int CONNECT_TIMEOUT_MILLIS = 30_000;
+    private static final int INFINITY = Search.INFINITY;
+
+    private final ServerSocket serverSocket;
+    private final List<Process> processes = new ArrayList<>();
+    private final Worker[] workers;
+    private final BlockingQueue<Reply> replies = new LinkedBlockingQueue<>();
+    private int nextJobId = 0;
+    // Statistics of the last search
+    private int jobs;
+    private int cancelledJobs;
+
+    /**
+     * A connection to a worker.
+     */
+    private static class Worker {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        Node job; // The job it is searching, or null if it is idle.
+
+        Worker(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+    }
+
+    /**
+     * A result from a worker (or, with a null worker, a worker that failed).
+     */
+    private static class Reply {
+        final Worker worker;
+        final int jobId;
+        final boolean done;
+        final int score;
+        final int scoreType;
+        final long nodes;
+        final int[] principalVariation;
+
+        Reply(Worker worker, int jobId, boolean done, int score, int scoreType, long nodes,
+                int[] principalVariation) {
+            this.worker = worker;
+            this.jobId = jobId;
+            this.done = done;
+            this.score = score;
+            this.scoreType = scoreType;
+            this.nodes = nodes;
+            this.principalVariation = principalVariation;
+        }
+    }
+
+    /**
+     * A position in the top of the tree. Its score (for the player to move
+     * there) is known to be within [lower, upper], and it is searched within
+     * the window (alpha, beta) given to it by its ancestors.
+     */
+    private static class Node {
+        final Node parent;
+        final byte[] moves; // From the empty board.
+        final int column; // The move that led here.
+        final int ply; // From the root.
+        Node[] children; // null for a job.
+        int lower = -INFINITY;
+        int upper = INFINITY;
+        int alpha;
+        int beta;
+        boolean needed; // Whether its score can still change the root's.
+        // For jobs:
+        int jobId = -1; // -1 until it is sent to a worker.
+        boolean running;
+        boolean cancelSent;
+        int[] principalVariation = new int[0];
+
+        Node(Node parent, byte[] moves, int column, int ply) {
+            this.parent = parent;
+            this.moves = moves;
+            this.column = column;
+            this.ply = ply;
+        }
+
+        boolean isResolved() {
+            return lower == upper || lower >= beta || upper <= alpha;
+        }
+    }
+
+    /**
+     * Starts the worker processes and waits for them to connect.
+     *
+     * @param workerCount  The amount of worker processes.
+     * @param engineConfig The engine settings the workers search with.
+     * @throws IOException if a worker can't be started or doesn't connect.
+     */
+    public SearchCoordinator(int workerCount, EngineConfig engineConfig) throws IOException {
+        serverSocket = new ServerSocket(0, workerCount, InetAddress.getLoopbackAddress());
+        workers = new Worker[workerCount];
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                processes.add(new ProcessBuilder(workerCommand(serverSocket.getLocalPort(), engineConfig))
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT).start());
+            }
+            serverSocket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            for (int i = 0; i < workerCount; i++) {
+                workers[i] = new Worker(serverSocket.accept());
+                final Worker worker = workers[i];
+                Thread reader = new Thread(() -> readReplies(worker), "worker-" + i);
+                reader.setDaemon(true);
+                reader.start();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: SearchCoordinator <workers> <depth> [moves] [splitPlies] [engineConfig]");
+            return;
+        }
+        int workerCount = Integer.parseInt(args[0]);
+        int depth = Integer.parseInt(args[1]);
+        String moves = (args.length > 2 && !args[2].equals("-")) ? args[2] : "";
+        int splitPlies = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_SPLIT_PLIES;
+        EngineConfig engineConfig = new EngineConfig((args.length > 4) ? args[4] : "minimax");
+        Connect4 game = new Connect4();
+        for (char move : moves.toCharArray()) {
+            game.play(move - '1');
+        }
+
+        long startTime = System.nanoTime();
+        SearchResult distributed;
+        try (SearchCoordinator coordinator = new SearchCoordinator(workerCount, engineConfig)) {
+            System.out.printf("Started %d workers in %.0fms%n", workerCount, (System.nanoTime() - startTime) / 1e6);
+            startTime = System.nanoTime();
+            distributed = coordinator.search(game, depth, splitPlies);
+            System.out.printf("%d workers: %s in %.1fms (%d jobs, %d cancelled)%n", workerCount, distributed,
+                    (System.nanoTime() - startTime) / 1e6, coordinator.jobs, coordinator.cancelledJobs);
+        }
+        Connect4 local = new Connect4();
+        engineConfig.configure(local);
+        for (char move : moves.toCharArray()) {
+            local.play(move - '1');
+        }
+        local.setDepth(depth, false);
+        startTime = System.nanoTime();
+        SearchResult single = local.getBestMoves(1)[0];
+        System.out.printf("1 process: %s in %.1fms%n", single, (System.nanoTime() - startTime) / 1e6);
+        System.out.println("Same score: " + (single.getScore() == distributed.getScore()));
+    }
+
+    /**
+     * Returns the command that starts a worker, with the same Java and class
+     * path (or module path) as this process.
+     */
+    private static List<String> workerCommand(int port, EngineConfig engineConfig) {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        String modulePath = System.getProperty("jdk.module.path");
+        if (modulePath != null) {
+            command.add("-p");
+            command.add(modulePath);
+            command.add("-m");
+            command.add(SearchWorker.class.getModule().getName() + "/" + SearchWorker.class.getName());
+        } else {
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(SearchWorker.class.getName());
+        }
+        command.add(Integer.toString(port));
+        command.add(engineConfig.toString());
+        return command;
+    }
+
+    /**
+     * Searches the game's current position like {@link Search#search}: every
+     * move is followed by {@code depth} more plies.
+     *
+     * @param splitPlies How many plies the coordinator expands itself (at
+     *                   least 1, and at most {@code depth + 1}); each position
+     *                   that deep is a job.
+     * @return The best move, its score, the total nodes of every worker, and the
+     *         principal variation.
+     * @throws IllegalArgumentException if the game is over.
+     * @throws IOException              if a worker fails.
+     */
+    public SearchResult search(Connect4 game, int depth, int splitPlies) throws IOException, InterruptedException {
+        if (game.getWinner() != 0) {
+            throw new IllegalArgumentException("The game is over.");
+        }
+        splitPlies = Math.max(1, Math.min(splitPlies, depth + 1));
+        byte[] rootMoves = new byte[game.getHistory().size()];
+        for (int i = 0; i < rootMoves.length; i++) {
+            rootMoves[i] = (byte) game.getHistory().getColumn(i);
+        }
+        Node root = new Node(null, rootMoves, -1, 0);
+        List<Node> leaves = new ArrayList<>();
+        expand(root, new GameBoard(game.getGameBoard()), game.currentTurn(), splitPlies, leaves);
+        jobs = 0;
+        cancelledJobs = 0;
+        long nodes = 0;
+        update(root);
+        while (root.lower != root.upper) {
+            for (Worker worker : workers) {
+                if (worker.job == null) {
+                    Node job = nextJob(leaves);
+                    if (job == null) {
+                        break;
+                    }
+                    send(worker, job, depth + 1 - job.ply);
+                }
+            }
+            if (Arrays.stream(workers).allMatch(worker -> worker.job == null)) {
+                throw new IllegalStateException("No jobs left, but the score isn't known.");
+            }
+            Reply reply = replies.take();
+            if (reply.worker == null) {
+                throw new IOException("A worker failed.");
+            }
+            Node job = reply.worker.job;
+            reply.worker.job = null;
+            job.running = false;
+            nodes += reply.nodes;
+            if (reply.done) {
+                job.lower = (reply.scoreType == SearchResult.UPPER_BOUND) ? -INFINITY : reply.score;
+                job.upper = (reply.scoreType == SearchResult.LOWER_BOUND) ? INFINITY : reply.score;
+                job.principalVariation = reply.principalVariation;
+            } else {
+                cancelledJobs++;
+                job.jobId = -1; // It can be sent again if it turns out to be needed after all.
+            }
+            update(root);
+            // Cancel the jobs that can't change the root's score any more.
+            for (Worker worker : workers) {
+                if (worker.job != null && !worker.job.needed && !worker.job.cancelSent) {
+                    worker.job.cancelSent = true;
+                    worker.out.writeByte(SearchWorker.CANCEL);
+                    worker.out.writeInt(worker.job.jobId);
+                    worker.out.flush();
+                }
+            }
+        }
+        // Wait for the jobs still running to be cancelled, so the workers are
+        // free for the next search.
+        for (Worker worker : workers) {
+            if (worker.job != null && !worker.job.cancelSent) {
+                worker.out.writeByte(SearchWorker.CANCEL);
+                worker.out.writeInt(worker.job.jobId);
+                worker.out.flush();
+            }
+        }
+        for (Worker worker : workers) {
+            while (worker.job != null) {
+                Reply reply = replies.take();
+                if (reply.worker == null) {
+                    throw new IOException("A worker failed.");
+                }
+                nodes += reply.nodes;
+                cancelledJobs += reply.done ? 0 : 1;
+                reply.worker.job = null;
+            }
+        }
+        // Follow the best moves down to the best job, then its own line.
+        List<Integer> principalVariation = new ArrayList<>();
+        Node node = root;
+        while (node.children != null) {
+            node = best(node);
+            principalVariation.add(node.column);
+        }
+        for (int column : node.principalVariation) {
+            principalVariation.add(column);
+        }
+        int[] pv = principalVariation.stream().mapToInt(Integer::intValue).toArray();
+        return new SearchResult(pv[0], root.lower, depth, nodes, pv, true);
+    }
+
+    /**
+     * Adds the children of a node down to {@code splitPlies}, except below
+     * positions where the game is over, and adds the bottom ones to the jobs
+     * (in move order).
+     */
+    private void expand(Node node, GameBoard board, int disk, int splitPlies, List<Node> leaves) {
+        if (node.ply == splitPlies || board.checkWin() != 0) {
+            leaves.add(node);
+            return;
+        }
+        int[] legal = board.getLegal();
+        node.children = new Node[legal.length];
+        for (int i = 0; i < legal.length; i++) {
+            byte[] moves = Arrays.copyOf(node.moves, node.moves.length + 1);
+            moves[moves.length - 1] = (byte) legal[i];
+            node.children[i] = new Node(node, moves, legal[i], node.ply + 1);
+            board.putDisk(disk, legal[i]);
+            expand(node.children[i], board, 3 - disk, splitPlies, leaves);
+            board.popDisk(legal[i]);
+        }
+    }
+
+    /**
+     * Brings the bounds of every node up to date with the results so far, then
+     * the windows, and whether each node is still needed.
+     */
+    private static void update(Node root) {
+        updateBounds(root);
+        updateWindows(root, -INFINITY, INFINITY, true);
+    }
+
+    /**
+     * Sets the bounds of a node and everything below it from the jobs' (each
+     * child's score is negated, as in negamax).
+     */
+    private static void updateBounds(Node node) {
+        if (node.children == null) {
+            return;
+        }
+        int lower = -INFINITY;
+        int upper = -INFINITY;
+        for (Node child : node.children) {
+            updateBounds(child);
+            lower = Math.max(lower, -child.upper);
+            upper = Math.max(upper, -child.lower);
+        }
+        node.lower = lower;
+        node.upper = upper;
+    }
+
+    /**
+     * Sets the window of a node and everything below it: each child is searched
+     * with the window a sequential alpha-beta search would give it, knowing the
+     * scores found so far.
+     */
+    private static void updateWindows(Node node, int alpha, int beta, boolean needed) {
+        node.alpha = alpha;
+        node.beta = beta;
+        node.needed = needed && !node.isResolved();
+        if (node.children != null) {
+            for (Node child : node.children) {
+                updateWindows(child, -beta, -Math.max(alpha, node.lower), node.needed);
+            }
+        }
+    }
+
+    /**
+     * Returns the first job (in move order) that is still needed and hasn't
+     * been sent, or null if there are none.
+     */
+    private static Node nextJob(List<Node> leaves) {
+        for (Node leaf : leaves) {
+            if (leaf.needed && leaf.jobId == -1) {
+                return leaf;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the child with the best score for the player to move at the node
+     * (the first, if several are as good).
+     */
+    private static Node best(Node node) {
+        Node best = node.children[0];
+        for (Node child : node.children) {
+            if (-child.upper > -best.upper) {
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    private void send(Worker worker, Node job, int depth) throws IOException {
+        job.jobId = nextJobId++;
+        job.running = true;
+        job.cancelSent = false;
+        worker.job = job;
+        jobs++;
+        DataOutputStream out = worker.out;
+        out.writeByte(SearchWorker.JOB);
+        out.writeInt(job.jobId);
+        out.writeByte(depth);
+        out.writeShort(job.alpha);
+        out.writeShort(job.beta);
+        out.writeByte(job.moves.length);
+        out.write(job.moves);
+        out.flush();
+    }
+
+    /**
+     * Reads a worker's results into the reply queue until its connection
+     * closes.
+     */
+    private void readReplies(Worker worker) {
+        try {
+            DataInputStream in = worker.in;
+            while (true) {
+                if (in.readByte() != SearchWorker.RESULT) {
+                    throw new IOException("Unknown message type.");
+                }
+                int jobId = in.readInt();
+                boolean done = in.readByte() == SearchWorker.DONE;
+                int score = in.readShort();
+                int scoreType = in.readByte();
+                long nodes = in.readLong();
+                int[] pv = new int[in.readByte()];
+                for (int i = 0; i < pv.length; i++) {
+                    pv[i] = in.readByte();
+                }
+                replies.add(new Reply(worker, jobId, done, score, scoreType, nodes, pv));
+            }
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                replies.add(new Reply(null, -1, false, 0, 0, 0, null));
+            }
+        }
+    }
+
+    /**
+     * Tells the workers to quit, and closes the connections.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Worker worker : workers) {
+            if (worker != null) {
+                try {
+                    worker.out.writeByte(SearchWorker.QUIT);
+                    worker.out.flush();
+                } catch (IOException e) {
+                    // It has gone already.
+                }
+                worker.socket.close();
+            }
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(1, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
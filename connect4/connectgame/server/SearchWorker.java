@@ -0,0 +1,227 @@
+package connectgame.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import connectgame.engine.Connect4;
+import connectgame.engine.MoveHistory;
+import connectgame.engine.SearchResult;
+import connectgame.tools.EngineConfig;
+
+/**
+ * <h4>SearchWorker</h4>
+ * <p>
+ * A worker process for a {@link SearchCoordinator}: it connects to the
+ * coordinator, then searches the subtrees (jobs) it is sent, one at a time,
+ * and sends back their scores. It keeps one Connect4 for all its jobs, so its
+ * transposition table carries over from one job to the next.
+ * <p>
+ * The protocol is binary (big-endian, as written by a DataOutputStream), and
+ * each message starts with its type byte:
+ * <ul>
+ * <li>{@code JOB} (to the worker): int job id, byte depth, short alpha, short
+ * beta, byte move count, then one byte per move (the columns played from an
+ * empty board to reach the position).</li>
+ * <li>{@code CANCEL} (to the worker): int job id. The job's search is stopped
+ * if it is still running.</li>
+ * <li>{@code QUIT} (to the worker): the worker exits.</li>
+ * <li>{@code RESULT} (from the worker): int job id, byte status
+ * ({@code DONE} or {@code CANCELLED}), short score, byte score type (see
+ * {@link SearchResult#getScoreType()}), long nodes, byte principal
+ * variation length, then one byte per move of it.</li>
+ * </ul>
+ * Every job gets a result, even a cancelled one (so the coordinator knows
+ * when the worker is free), but a cancelled job's score means nothing.
+ * <p>
+ * Usage: {@code SearchWorker <port> [engineConfig]} (the coordinator is on
+ * the loopback address). A SearchCoordinator normally starts its workers
+ * itself.
+ */
+public class SearchWorker {
+    // Message types
+    static final byte JOB = 'J';
+    static final byte CANCEL = 'C';
+    static final byte QUIT = 'Q';
+    static final byte RESULT = 'R';
+    // Result statuses
+    static final byte DONE = 0;
+    static final byte CANCELLED = 1;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Connect4 game;
+    private final BlockingQueue<Job> jobs = new LinkedBlockingQueue<>();
+    private final Object lock = new Object(); // Guards running, so a cancel can't interrupt the next job.
+    private Job running;
+    private Thread searchThread;
+
+    /**
+     * A job waiting or running.
+     */
+    private static class Job {
+        final int id;
+        final int depth;
+        final int alpha;
+        final int beta;
+        final byte[] moves;
+        volatile boolean cancelled = false;
+
+        Job(int id, int depth, int alpha, int beta, byte[] moves) {
+            this.id = id;
+            this.depth = depth;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.moves = moves;
+        }
+    }
+
+    /**
+     * Connects to a coordinator.
+     *
+     * @param port         The coordinator's port on the loopback address.
+     * @param engineConfig The engine settings to search with.
+     */
+    public SearchWorker(int port, EngineConfig engineConfig) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        game = new Connect4();
+        engineConfig.configure(game);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: SearchWorker <port> [engineConfig]");
+            return;
+        }
+        EngineConfig engineConfig = new EngineConfig((args.length > 1) ? args[1] : "minimax");
+        new SearchWorker(Integer.parseInt(args[0]), engineConfig).run();
+    }
+
+    /**
+     * Reads messages until {@code QUIT} or the coordinator goes away, while the
+     * jobs are searched on another thread.
+     */
+    public void run() throws IOException, InterruptedException {
+        searchThread = new Thread(this::searchJobs, "search");
+        searchThread.setDaemon(true);
+        searchThread.start();
+        try (socket) {
+            while (true) {
+                byte type = in.readByte();
+                if (type == JOB) {
+                    int id = in.readInt();
+                    int depth = in.readByte();
+                    int alpha = in.readShort();
+                    int beta = in.readShort();
+                    byte[] moves = new byte[in.readByte()];
+                    in.readFully(moves);
+                    jobs.add(new Job(id, depth, alpha, beta, moves));
+                } else if (type == CANCEL) {
+                    cancel(in.readInt());
+                } else if (type == QUIT) {
+                    break;
+                } else {
+                    throw new IOException("Unknown message type: " + type);
+                }
+            }
+        } catch (EOFException e) {
+            // The coordinator went away.
+        } finally {
+            searchThread.interrupt();
+        }
+    }
+
+    /**
+     * Stops the job with the given id, if it is running or waiting.
+     */
+    private void cancel(int id) {
+        for (Job job : jobs) {
+            if (job.id == id) {
+                job.cancelled = true;
+            }
+        }
+        synchronized (lock) {
+            if (running != null && running.id == id) {
+                running.cancelled = true;
+                searchThread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Searches the jobs as they arrive, and sends their results.
+     */
+    private void searchJobs() {
+        try {
+            while (true) {
+                Job job = jobs.take();
+                synchronized (lock) {
+                    running = job;
+                }
+                SearchResult result = null;
+                if (!job.cancelled) {
+                    setPosition(job.moves);
+                    result = game.evaluate(job.depth, job.alpha, job.beta);
+                }
+                synchronized (lock) {
+                    running = null;
+                    Thread.interrupted(); // Clears an interrupt from a cancel.
+                }
+                sendResult(job, result);
+            }
+        } catch (InterruptedException e) {
+            // The worker is quitting.
+        } catch (IOException e) {
+            try {
+                socket.close(); // The reader will see it too.
+            } catch (IOException closeFailed) {
+                // Already closing
+            }
+        }
+    }
+
+    /**
+     * Sets the game to the position after the moves, undoing only the moves
+     * that differ from the last job's.
+     */
+    private void setPosition(byte[] moves) {
+        MoveHistory history = game.getHistory();
+        int same = 0;
+        while (same < Math.min(moves.length, history.size()) && history.getColumn(same) == moves[same]) {
+            same++;
+        }
+        while (history.size() > same) {
+            game.undoLast();
+        }
+        for (int i = same; i < moves.length; i++) {
+            game.play(moves[i]);
+        }
+    }
+
+    private void sendResult(Job job, SearchResult result) throws IOException {
+        boolean done = result != null && result.isComplete() && !job.cancelled;
+        out.writeByte(RESULT);
+        out.writeInt(job.id);
+        out.writeByte(done ? DONE : CANCELLED);
+        out.writeShort(done ? result.getScore() : 0);
+        out.writeByte(done ? result.getScoreType() : SearchResult.EXACT);
+        out.writeLong((result != null) ? result.getNodes() : 0);
+        int[] pv = done ? result.getPrincipalVariation() : new int[0];
+        out.writeByte(pv.length);
+        for (int column : pv) {
+            out.writeByte(column);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,346 @@
+package connectgame.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import connectgame.engine.Connect4;
+import connectgame.engine.GameBoard;
+import connectgame.engine.MoveHistory;
+import connectgame.engine.SearchResult;
+import connectgame.records.GameRecord;
+
+/**
+ * <h4>Session</h4>
+ * <p>
+ * A single client connection to a {@link SessionServer}, playing one game at
+ * a time. Columns are numbered from 1, and a list of moves is written as one
+ * digit per move (e.g. "4435").
+ * <p>
+ * Commands (one per line) and their responses:
+ * <ul>
+ * <li>{@code NEW <pvp|pvr|pvc> [red|yellow]} - starts a new game, with the
+ * player using the given disk (default red). Response:
+ * {@code GAME <moves>}, where the moves include the computer's first move if
+ * it starts.</li>
+ * <li>{@code PLAY <column>} - plays the player's move, then the computer's
+ * reply (in pvr and pvc mode). Response: {@code MOVE <reply> <winner>},
+ * where reply is 0 if there was none and winner is 0 (game not over), 1 (red),
+ * 2 (yellow) or 3 (draw).</li>
+ * <li>{@code UNDO} - undoes moves back to the player's previous turn.
+ * Response: {@code OK <moves>}.</li>
+ * <li>{@code BOARD} - Response: {@code BOARD <moves> <turn> <winner>}.</li>
+ * <li>{@code PARK} - puts the current game into the server's compact
+ * {@link SessionStore}, freeing the session. Response: {@code PARKED <id>}.</li>
+ * <li>{@code RESUME <id>} - takes a parked game out of the store (from any
+ * session) and carries on with it. Response: {@code GAME <moves>}.</li>
+ * <li>{@code STATS} - Response: {@code STATS <server statistics>}.</li>
+ * <li>{@code QUIT} - Response: {@code BYE}, then the connection is closed.</li>
+ * </ul>
+ * Finished games are logged if the server has a game-record file.
+ * <p>
+ * Any problem is reported as {@code ERR <message>}, and {@code ERR busy}
+ * means the engine queue was full (the command had no effect, and can be
+ * retried).
+ */
+public class Session implements Runnable {
+    /**
+     * What the player is playing against (stored by ordinal in a parked
+     * game's tag, so only add to the end).
+     */
+    enum GameMode {
+        PLAYER_V_PLAYER,
+        PLAYER_V_RANDOM,
+        PLAYER_V_COMPUTER
+    }
+
+    private final SessionServer server;
+    private final Socket socket;
+
+    private Connect4 game;
+    private GameMode mode;
+    private int playerDisk;
+    private GameRecord record; // The current game with engine stats, null if games aren't logged.
+
+    Session(SessionServer server, Socket socket) {
+        this.server = server;
+        this.socket = socket;
+    }
+
+    @Override
+    public void run() {
+        server.sessionStarted();
+        try (socket;
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                PrintWriter out = new PrintWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII), false)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String response = handle(line.trim());
+                out.print(response);
+                out.print('\n');
+                out.flush();
+                if (response.equals("BYE")) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // The client went away; nothing to do.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            server.sessionEnded();
+        }
+    }
+
+    /**
+     * Handles a single command and returns the response.
+     */
+    String handle(String line) throws InterruptedException {
+        String[] words = line.split("\\s+");
+        try {
+            switch (words[0].toUpperCase()) {
+                case "NEW":
+                    return newGame(words);
+                case "PLAY":
+                    return play(words);
+                case "UNDO":
+                    return undo();
+                case "BOARD":
+                    return board();
+                case "PARK":
+                    return park();
+                case "RESUME":
+                    return resume(words);
+                case "STATS":
+                    return "STATS " + server.stats();
+                case "QUIT":
+                    return "BYE";
+                default:
+                    return "ERR unknown command";
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return "ERR bad arguments";
+        } catch (RejectedExecutionException e) {
+            return "ERR busy";
+        }
+    }
+
+    private String newGame(String[] words) throws InterruptedException {
+        switch (words[1].toLowerCase()) {
+            case "pvp":
+                mode = GameMode.PLAYER_V_PLAYER;
+                break;
+            case "pvr":
+                mode = GameMode.PLAYER_V_RANDOM;
+                break;
+            case "pvc":
+                mode = GameMode.PLAYER_V_COMPUTER;
+                break;
+            default:
+                return "ERR unknown mode";
+        }
+        playerDisk = (words.length > 2 && words[2].equalsIgnoreCase("yellow")) ? GameBoard.YELLOW : GameBoard.RED;
+        Connect4 newGame = new Connect4();
+        server.getEngineConfig().configure(newGame);
+        game = newGame;
+        record = server.isRecording() ? new GameRecord(game.columns(), game.rows(), game.toWin()) : null;
+        server.gameStarted();
+        if (mode != GameMode.PLAYER_V_PLAYER && playerDisk != game.currentTurn()) {
+            playAuto();
+        }
+        return "GAME " + moves();
+    }
+
+    private String play(String[] words) throws InterruptedException {
+        if (game == null) {
+            return "ERR no game";
+        }
+        if (game.getWinner() != 0) {
+            return "ERR game over";
+        }
+        int column = Integer.parseInt(words[1]) - 1;
+        if (!game.safePlay(column)) {
+            return "ERR illegal move";
+        }
+        updateRecord();
+        int reply = 0;
+        if (mode != GameMode.PLAYER_V_PLAYER && game.getWinner() == 0) {
+            try {
+                playAuto();
+            } catch (RejectedExecutionException e) {
+                game.undoLast(); // So the command has no effect.
+                updateRecord();
+                throw e;
+            }
+            reply = game.getHistory().lastColumn() + 1;
+        }
+        if (game.getWinner() != 0 && record != null) {
+            record.setResult(game.getWinner());
+            server.recordGame(record);
+        }
+        return "MOVE " + reply + " " + game.getWinner();
+    }
+
+    private String undo() {
+        if (game == null) {
+            return "ERR no game";
+        }
+        if (mode == GameMode.PLAYER_V_PLAYER) {
+            game.undoLast();
+        } else {
+            // Undo back to the player's previous turn.
+            game.undoLast();
+            while (game.currentTurn() != playerDisk && game.undoLast()) {
+                // Keep undoing
+            }
+        }
+        updateRecord();
+        return "OK " + moves();
+    }
+
+    private String board() {
+        if (game == null) {
+            return "ERR no game";
+        }
+        return "BOARD " + moves() + " " + game.currentTurn() + " " + game.getWinner();
+    }
+
+    private String park() {
+        if (game == null) {
+            return "ERR no game";
+        }
+        int id = server.getStore().store(game, mode.ordinal() | (playerDisk << 2));
+        game = null;
+        record = null;
+        return "PARKED " + id;
+    }
+
+    private String resume(String[] words) {
+        int id = Integer.parseInt(words[1]);
+        SessionStore store = server.getStore();
+        Connect4 parkedGame;
+        int tag;
+        synchronized (store) { // So two sessions can't resume the same game.
+            if (!store.contains(id)) {
+                return "ERR no parked game " + id;
+            }
+            tag = store.getTag(id);
+            parkedGame = store.load(id);
+            store.remove(id);
+        }
+        int depth = parkedGame.getDepth();
+        boolean adaptive = parkedGame.isAdaptiveDepth();
+        server.getEngineConfig().configure(parkedGame);
+        if (!server.getEngineConfig().isRandom()) {
+            parkedGame.setDepth(depth, adaptive);
+        }
+        game = parkedGame;
+        record = server.isRecording() ? GameRecord.of(game) : null; // The engine stats weren't parked.
+        mode = GameMode.values()[tag & 3];
+        playerDisk = tag >> 2;
+        return "GAME " + moves();
+    }
+
+    /**
+     * Plays a random move straight away, or sends a computer move to the engine
+     * pool (or the scheduler, if the server has one) and waits for it.
+     */
+    private void playAuto() throws InterruptedException {
+        if (mode == GameMode.PLAYER_V_RANDOM) {
+            game.playRandom();
+            updateRecord();
+            return;
+        }
+        server.searchStarted();
+        EngineScheduler scheduler = server.getScheduler();
+        if (scheduler != null) {
+            playScheduled(scheduler);
+            return;
+        }
+        final Connect4 searchGame = game;
+        final int movesBefore = game.getHistory().size();
+        long startTime = System.nanoTime();
+        Future<?> search = server.getEnginePool().submit(() -> server.getEngineConfig().playMove(searchGame));
+        try {
+            search.get();
+            if (record != null && game.getHistory().size() > movesBefore) {
+                SearchResult result = game.getLastSearchResult();
+                if (!server.getEngineConfig().isRandom() && result != null) {
+                    record.addMove(result, (System.nanoTime() - startTime) / 1000);
+                } else {
+                    updateRecord();
+                }
+            }
+        } catch (InterruptedException e) {
+            search.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A search failed.", e.getCause());
+        }
+    }
+
+    /**
+     * Sends a computer move to the scheduler, and plays the best move it found
+     * within the move time.
+     */
+    private void playScheduled(EngineScheduler scheduler) throws InterruptedException {
+        long startTime = System.nanoTime();
+        CompletableFuture<SearchResult> search = scheduler.submit(game, game.getDepth(), server.getMoveMillis(), 0,
+                EngineScheduler.NORMAL);
+        SearchResult result;
+        try {
+            result = search.get();
+        } catch (InterruptedException e) {
+            search.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A search failed.", e.getCause());
+        }
+        game.play(result.getBestMove());
+        if (record != null) {
+            record.addMove(result, (System.nanoTime() - startTime) / 1000);
+        }
+    }
+
+    /**
+     * Brings the record up to date with the game after moves without engine
+     * stats are played or moves are undone.
+     */
+    private void updateRecord() {
+        if (record == null) {
+            return;
+        }
+        MoveHistory history = game.getHistory();
+        int same = 0;
+        final int common = Math.min(record.getMoveCount(), history.size());
+        while (same < common && record.getMove(same) == history.getColumn(same)) {
+            same++;
+        }
+        record.truncate(same);
+        for (int i = same; i < history.size(); i++) {
+            record.addMove(history.getColumn(i));
+        }
+    }
+
+    /**
+     * Returns the moves of the current game as digits (columns from 1).
+     */
+    private String moves() {
+        MoveHistory history = game.getHistory();
+        StringBuilder str = new StringBuilder(history.size());
+        for (int i = 0; i < history.size(); i++) {
+            str.append(history.getColumn(i) + 1);
+        }
+        return str.length() == 0 ? "-" : str.toString();
+    }
+}
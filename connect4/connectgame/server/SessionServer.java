@@ -0,0 +1,315 @@
+package connectgame.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import connectgame.engine.Connect4;
+import connectgame.records.GameRecord;
+import connectgame.records.GameRecordWriter;
+import connectgame.tools.EngineConfig;
+
+/**
+ * <h4>SessionServer</h4>
+ * <p>
+ * A headless server that hosts lots of independent Connect 4 games over a
+ * line based protocol on a local socket (see {@link Session} for the
+ * commands).
+ * <p>
+ * Each connection gets its own session thread, which spends nearly all its
+ * time waiting for the next line, so these are virtual threads when the JVM
+ * has them (Java 21+) and small platform threads otherwise. Engine searches
+ * are CPU bound, so they are never run on a session thread: they are sent to
+ * a fixed pool of platform threads (one per core) with a bounded queue, so
+ * lots of searches can't starve the sessions of I/O, and a full queue is
+ * reported to the client as busy instead of piling up.
+ * <p>
+ * With a move time, the computer moves of minimax engines go to an
+ * {@link EngineScheduler} instead, which shares the engine threads fairly
+ * between all the searches and answers each one within the move time.
+ * <p>
+ * Finished games can be logged to a game-record file (see
+ * {@code setRecordWriter}), with the engine stats of every computer move.
+ * <p>
+ * Usage:
+ * {@code SessionServer [port] [engineConfig] [queueCapacity] [recordFile|-] [moveMillis]},
+ * e.g. {@code SessionServer 4000 minimax:depth=6 100000 games.c4gr} or
+ * {@code SessionServer 4000 minimax:depth=20 100000 - 500}.
+ */
+public class SessionServer {
+    public static final int DEFAULT_PORT = 4000;
+    private static final long PLATFORM_THREAD_STACK = 256 * 1024; // Used if there are no virtual threads.
+
+    private final int port;
+    private final EngineConfig engineConfig;
+    private final ExecutorService sessionExecutor;
+    private final ThreadPoolExecutor enginePool;
+    private final EngineScheduler scheduler; // null if searches go to the engine pool.
+    private final long moveMillis;
+    private final SessionStore store = new SessionStore(); // Parked (idle) games.
+    private volatile GameRecordWriter recordWriter; // null if games aren't logged.
+    private ServerSocket serverSocket;
+
+    // Statistics
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicLong totalSessions = new AtomicLong();
+    private final AtomicLong gamesStarted = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong gamesRecorded = new AtomicLong();
+
+    /**
+     * Constructs a new SessionServer (not yet started).
+     *
+     * @param port          The port to listen on (on the loopback address).
+     * @param engineConfig  The engine settings for computer moves.
+     * @param queueCapacity The maximum amount of searches waiting for an engine
+     *                      thread.
+     */
+    public SessionServer(int port, EngineConfig engineConfig, int queueCapacity) {
+        this(port, engineConfig, queueCapacity, 0);
+    }
+
+    /**
+     * Constructs a new SessionServer (not yet started) whose minimax computer
+     * moves are scheduled to be answered within a move time.
+     *
+     * @param port          The port to listen on (on the loopback address).
+     * @param engineConfig  The engine settings for computer moves (its depth is
+     *                      the deepest a move searches to).
+     * @param queueCapacity The maximum amount of searches waiting.
+     * @param moveMillis    The time each computer move has, or 0 to search to
+     *                      the engine's depth on the engine pool.
+     */
+    public SessionServer(int port, EngineConfig engineConfig, int queueCapacity, long moveMillis) {
+        this.port = port;
+        this.engineConfig = engineConfig;
+        this.sessionExecutor = newPerTaskExecutor("session");
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.enginePool = new ThreadPoolExecutor(cores, cores, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "engine");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.moveMillis = moveMillis;
+        this.scheduler = (moveMillis > 0 && engineConfig.isMinimax())
+                ? new EngineScheduler(cores, EngineScheduler.DEFAULT_SLICE_NODES, queueCapacity)
+                : null;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        EngineConfig config = new EngineConfig((args.length > 1) ? args[1] : "minimax:depth=6");
+        int queueCapacity = (args.length > 2) ? Integer.parseInt(args[2]) : 100_000;
+        long moveMillis = (args.length > 4) ? Long.parseLong(args[4]) : 0;
+        SessionServer server = new SessionServer(port, config, queueCapacity, moveMillis);
+        if (args.length > 3 && !args[3].equals("-")) {
+            Connect4 game = new Connect4();
+            server.setRecordWriter(
+                    new GameRecordWriter(Paths.get(args[3]), game.columns(), game.rows(), game.toWin()));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close(); // Flushes the game log.
+            } catch (IOException e) {
+                System.err.println("Couldn't close the server: " + e);
+            }
+        }));
+        System.out.println("Listening on port " + port + " (engine " + config
+                + ((server.getScheduler() != null) ? ", " + moveMillis + "ms per move, " : ", ")
+                + (hasVirtualThreads() ? "virtual" : "platform") + " session threads)");
+        server.serve();
+    }
+
+    /**
+     * Returns an executor that runs each task in a new thread: a virtual thread
+     * if this JVM has them, otherwise a daemon platform thread with a small
+     * stack.
+     *
+     * @param name The name for the threads.
+     */
+    public static ExecutorService newPerTaskExecutor(String name) {
+        try {
+            // Java 21+. Looked up reflectively so this still runs on Java 17.
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicLong count = new AtomicLong();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(null, runnable, name + "-" + count.incrementAndGet(),
+                        PLATFORM_THREAD_STACK);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Whether this JVM has virtual threads.
+     */
+    public static boolean hasVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sets the writer finished games are logged to (null to stop logging). The
+     * writer is closed when the server is.
+     */
+    public void setRecordWriter(GameRecordWriter recordWriter) {
+        this.recordWriter = recordWriter;
+    }
+
+    /**
+     * Opens the server socket. Call {@code serve()} to start accepting
+     * connections.
+     */
+    public synchronized void open() throws IOException {
+        if (serverSocket == null) {
+            serverSocket = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+        }
+    }
+
+    /**
+     * Accepts connections until {@code close()} is called, starting a session
+     * for each one.
+     */
+    public void serve() throws IOException {
+        open();
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                totalSessions.incrementAndGet();
+                sessionExecutor.execute(new Session(this, socket));
+            }
+        } catch (SocketException e) {
+            if (!serverSocket.isClosed()) {
+                throw e;
+            }
+            // Otherwise close() was called.
+        }
+    }
+
+    /**
+     * Stops accepting connections and shuts down the engine threads.
+     */
+    public synchronized void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        sessionExecutor.shutdownNow();
+        enginePool.shutdownNow();
+        if (scheduler != null) {
+            scheduler.close();
+        }
+        GameRecordWriter writer = recordWriter;
+        if (writer != null) {
+            recordWriter = null;
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     */
+    public int getPort() {
+        return (serverSocket != null) ? serverSocket.getLocalPort() : port;
+    }
+
+    EngineConfig getEngineConfig() {
+        return engineConfig;
+    }
+
+    ThreadPoolExecutor getEnginePool() {
+        return enginePool;
+    }
+
+    /**
+     * Returns the scheduler for computer moves, or null if they go to the
+     * engine pool.
+     */
+    EngineScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Returns the time each scheduled computer move has.
+     */
+    long getMoveMillis() {
+        return moveMillis;
+    }
+
+    SessionStore getStore() {
+        return store;
+    }
+
+    void sessionStarted() {
+        activeSessions.incrementAndGet();
+    }
+
+    void sessionEnded() {
+        activeSessions.decrementAndGet();
+    }
+
+    void gameStarted() {
+        gamesStarted.incrementAndGet();
+    }
+
+    void searchStarted() {
+        searches.incrementAndGet();
+    }
+
+    /**
+     * Returns whether finished games are logged.
+     */
+    boolean isRecording() {
+        return recordWriter != null;
+    }
+
+    /**
+     * Logs a finished game, if games are logged. If the log can't be written
+     * to, logging stops (games are still played).
+     */
+    void recordGame(GameRecord record) {
+        GameRecordWriter writer = recordWriter;
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(record);
+            gamesRecorded.incrementAndGet();
+        } catch (IOException e) {
+            recordWriter = null;
+            System.err.println("Game logging stopped: " + e);
+        }
+    }
+
+    /**
+     * Returns the server statistics as a single line.
+     */
+    String stats() {
+        return "sessions=" + activeSessions.get()
+                + " total=" + totalSessions.get()
+                + " games=" + gamesStarted.get()
+                + " searches=" + searches.get()
+                + " queued=" + enginePool.getQueue().size()
+                + " parked=" + store.size()
+                + " parkedBytes=" + store.memoryUsed()
+                + " recorded=" + gamesRecorded.get()
+                + " virtual=" + hasVirtualThreads()
+                + ((scheduler != null) ? " scheduler: " + scheduler.stats() : "");
+    }
+}
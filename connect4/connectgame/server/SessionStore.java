@@ -0,0 +1,144 @@
+package connectgame.server;
+
+import java.util.Arrays;
+
+import connectgame.engine.Connect4;
+
+/**
+ * <h4>SessionStore</h4>
+ * <p>
+ * A store for idle games, kept in compact form (see
+ * {@link Connect4#writeCompact(long[], int)}) in one big {@code long[]}
+ * instead of as Connect4 objects. Each game takes {@code SLOT_WORDS} longs (48
+ * bytes), plus 4 bytes when its slot is free, so millions of idle games fit in
+ * a few hundred megabytes. Games are inflated back into a Connect4 when they
+ * are needed again.
+ * <p>
+ * A game's id is the index of its slot, and ids of removed games are reused.
+ * Each game can also have a 16 bit tag (e.g. the game mode and player disk).
+ * This class is thread safe.
+ */
+public class SessionStore {
+    /**
+     * The amount of longs each game uses: the compact game and a header word.
+     */
+    public static final int SLOT_WORDS = Connect4.COMPACT_WORDS + 1;
+    private static final long USED = 1L << 63; // Header bit for slots in use.
+    private static final int INITIAL_SLOTS = 1024;
+
+    private long[] slots = new long[INITIAL_SLOTS * SLOT_WORDS];
+    private int[] freeSlots = new int[INITIAL_SLOTS]; // A stack of free slot indices.
+    private int freeCount = 0;
+    private int slotCount = 0; // Slots that have ever been used.
+    private int size = 0;
+
+    /**
+     * Stores a game.
+     *
+     * @param game The game. It should not be used after this, apart from
+     *             discarding it.
+     * @param tag  Any 16 bit value to keep with the game.
+     * @return The id of the stored game.
+     */
+    public synchronized int store(Connect4 game, int tag) {
+        int id;
+        if (freeCount > 0) {
+            id = freeSlots[--freeCount];
+        } else {
+            if ((slotCount + 1) * SLOT_WORDS > slots.length) {
+                slots = Arrays.copyOf(slots, slots.length * 2);
+            }
+            id = slotCount++;
+        }
+        write(id, game, tag);
+        size++;
+        return id;
+    }
+
+    /**
+     * Replaces the stored game with the given id.
+     *
+     * @throws IllegalArgumentException if there is no game with that id.
+     */
+    public synchronized void update(int id, Connect4 game, int tag) {
+        checkId(id);
+        write(id, game, tag);
+    }
+
+    /**
+     * Inflates the game with the given id into a new Connect4 (which has the
+     * default engine settings, apart from its depth and whether that is
+     * adaptive). The game stays in the store.
+     *
+     * @throws IllegalArgumentException if there is no game with that id.
+     */
+    public Connect4 load(int id) {
+        long[] words = new long[Connect4.COMPACT_WORDS];
+        synchronized (this) {
+            checkId(id);
+            System.arraycopy(slots, id * SLOT_WORDS + 1, words, 0, words.length);
+        }
+        return Connect4.readCompact(words, 0);
+    }
+
+    /**
+     * Returns the tag of the game with the given id.
+     *
+     * @throws IllegalArgumentException if there is no game with that id.
+     */
+    public synchronized int getTag(int id) {
+        checkId(id);
+        return (int) (slots[id * SLOT_WORDS] & 0xFFFF);
+    }
+
+    /**
+     * Removes the game with the given id, if there is one.
+     *
+     * @return Whether a game was removed.
+     */
+    public synchronized boolean remove(int id) {
+        if (!contains(id)) {
+            return false;
+        }
+        slots[id * SLOT_WORDS] = 0;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = id;
+        size--;
+        return true;
+    }
+
+    /**
+     * Whether there is a game with the given id.
+     */
+    public synchronized boolean contains(int id) {
+        return id >= 0 && id < slotCount && (slots[id * SLOT_WORDS] & USED) != 0;
+    }
+
+    /**
+     * Returns the amount of stored games.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the amount of memory used by the store's arrays, in bytes.
+     */
+    public synchronized long memoryUsed() {
+        return 8L * slots.length + 4L * freeSlots.length;
+    }
+
+    private void write(int id, Connect4 game, int tag) {
+        final int offset = id * SLOT_WORDS;
+        slots[offset] = USED | (tag & 0xFFFF);
+        game.writeCompact(slots, offset + 1);
+    }
+
+    private void checkId(int id) {
+        if (!contains(id)) {
+            throw new IllegalArgumentException("There is no stored game with id " + id);
+        }
+    }
+}
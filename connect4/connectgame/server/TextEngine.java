@@ -0,0 +1,333 @@
+package connectgame.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import connectgame.engine.Connect4;
+import connectgame.engine.MoveHistory;
+import connectgame.engine.Search;
+import connectgame.engine.SearchResult;
+import connectgame.tools.EngineConfig;
+
+/**
+ * <h4>TextEngine</h4>
+ * <p>
+ * The Connect4 engine as a separate process, driven by a line based protocol
+ * on stdin and stdout, modelled on the UCI protocol of chess engines. Columns
+ * are numbered from 1.
+ * <p>
+ * Commands (one per line):
+ * <ul>
+ * <li>{@code uci} - Response: {@code id name <name>}, then {@code uciok}.</li>
+ * <li>{@code isready} - Response: {@code readyok} (straight away, even while
+ * searching).</li>
+ * <li>{@code ucinewgame} (or {@code newgame}) - starts a new game, with an
+ * empty transposition table.</li>
+ * <li>{@code position [startpos] [moves <column>...]} - sets the position to
+ * the moves from an empty board, given one per word or as one word of digits
+ * (e.g. {@code moves 4 4 3 5} or {@code moves 4435}). The transposition table
+ * is kept, as the position usually follows on from the last one.</li>
+ * <li>{@code go [depth <plies>] [movetime <ms>] [nodes <nodes>] [infinite]} -
+ * searches the position with iterative deepening within the given limits (with
+ * none, or {@code infinite}, until the score is certain or {@code stop}). An
+ * {@code info} line is sent as each depth finishes:
+ * {@code info depth <plies> score cp <score> nodes <nodes> nps <nodes/s> time <ms> pv <columns>},
+ * where the score is the search's (0 for a draw) or, once the result is
+ * certain, {@code score mate <moves>} (negative if the player to move loses).
+ * When the search ends: {@code bestmove <column>}.</li>
+ * <li>{@code stop} - stops the search, which then sends its best move.</li>
+ * <li>{@code quit} - stops any search and exits.</li>
+ * </ul>
+ * A command that changes the position while a search is running stops the
+ * search first. Any problem is reported as {@code info string error <message>}.
+ * <p>
+ * The search runs on its own thread, which checks for {@code stop} every
+ * thousand or so positions (well under a millisecond). Output goes through a
+ * queue to a writer thread, so the search never waits for stdout to be read.
+ * <p>
+ * Usage: {@code TextEngine [engineConfig]} (see {@link EngineConfig}; only
+ * the settings other than depth and time apply, as {@code go} sets those).
+ */
+public class TextEngine {
+    private static final String NAME = "Java-Connect4 v.2";
+
+    private final EngineConfig engineConfig;
+    private final Output out;
+    private Connect4 game;
+    private Thread searchThread; // The running search, if any.
+
+    /**
+     * Constructs a new TextEngine.
+     *
+     * @param engineConfig The engine settings for each new game.
+     * @param output       Where to write the responses.
+     */
+    public TextEngine(EngineConfig engineConfig, OutputStream output) {
+        this.engineConfig = engineConfig;
+        this.out = new Output(output);
+        newGame();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        EngineConfig engineConfig = new EngineConfig((args.length > 0) ? args[0] : "minimax");
+        if (engineConfig.isRandom()) {
+            throw new IllegalArgumentException("The engine must search.");
+        }
+        new TextEngine(engineConfig, System.out)
+                .run(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Handles commands until {@code quit} or the end of the input, then waits
+     * for the output to be written.
+     */
+    public void run(BufferedReader in) throws IOException, InterruptedException {
+        String line;
+        while ((line = in.readLine()) != null && handle(line.trim())) {
+            // Keep reading commands
+        }
+        stopSearch();
+        out.close();
+    }
+
+    /**
+     * Handles a single command.
+     *
+     * @return false if it was {@code quit}.
+     */
+    boolean handle(String line) throws InterruptedException {
+        if (line.isEmpty()) {
+            return true;
+        }
+        String[] words = line.split("\\s+");
+        try {
+            switch (words[0].toLowerCase()) {
+                case "uci":
+                    out.send("id name " + NAME);
+                    out.send("uciok");
+                    break;
+                case "isready":
+                    out.send("readyok");
+                    break;
+                case "ucinewgame":
+                case "newgame":
+                    stopSearch();
+                    newGame();
+                    break;
+                case "position":
+                    stopSearch();
+                    position(words);
+                    break;
+                case "go":
+                    stopSearch();
+                    go(words);
+                    break;
+                case "stop":
+                    stopSearch();
+                    break;
+                case "quit":
+                    return false;
+                default:
+                    out.send("info string error unknown command " + words[0]);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            out.send("info string error bad arguments");
+        }
+        return true;
+    }
+
+    private void newGame() {
+        game = new Connect4();
+        engineConfig.configure(game);
+    }
+
+    /**
+     * Sets the position, undoing only the moves that differ from the current
+     * game. If a move is illegal, the game is left at the moves before it.
+     */
+    private void position(String[] words) {
+        List<Integer> columns = new ArrayList<>();
+        int i = 1;
+        if (i < words.length && words[i].equalsIgnoreCase("startpos")) {
+            i++;
+        }
+        if (i < words.length) {
+            if (!words[i].equalsIgnoreCase("moves")) {
+                out.send("info string error expected moves");
+                return;
+            }
+            for (i++; i < words.length; i++) {
+                for (char digit : words[i].toCharArray()) {
+                    if (digit < '1' || digit > '9') {
+                        out.send("info string error bad move " + digit);
+                        return;
+                    }
+                    columns.add(digit - '1');
+                }
+            }
+        }
+        MoveHistory history = game.getHistory();
+        int same = 0;
+        while (same < Math.min(columns.size(), history.size()) && history.getColumn(same) == columns.get(same)) {
+            same++;
+        }
+        while (history.size() > same) {
+            game.undoLast();
+        }
+        for (int j = same; j < columns.size(); j++) {
+            if (game.getWinner() != 0 || !game.safePlay(columns.get(j))) {
+                out.send("info string error illegal move " + (columns.get(j) + 1));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts a search of the current position on a new thread.
+     */
+    private void go(String[] words) {
+        int maxDepth = Integer.MAX_VALUE;
+        long timeMillis = 0;
+        long maxNodes = 0;
+        for (int i = 1; i < words.length; i++) {
+            switch (words[i].toLowerCase()) {
+                case "depth":
+                    maxDepth = Integer.parseInt(words[++i]) - 1; // The search doesn't count the first move.
+                    break;
+                case "movetime":
+                    timeMillis = Long.parseLong(words[++i]);
+                    break;
+                case "nodes":
+                    maxNodes = Long.parseLong(words[++i]);
+                    break;
+                case "infinite":
+                    break;
+                default:
+                    out.send("info string error unknown limit " + words[i]);
+                    return;
+            }
+        }
+        if (game.getWinner() != 0) {
+            out.send("info string error game over");
+            out.send("bestmove 0");
+            return;
+        }
+        final Connect4 searchGame = game;
+        final int searchDepth = Math.max(maxDepth, 0);
+        final long searchMillis = timeMillis;
+        final long searchNodes = maxNodes;
+        final int empty = game.columns() * game.rows() - game.getHistory().size();
+        searchThread = new Thread(() -> {
+            final long startTime = System.nanoTime();
+            SearchResult result = searchGame.search(searchDepth, searchMillis, searchNodes,
+                    iteration -> out.send(info(iteration, empty, System.nanoTime() - startTime)));
+            int bestMove = result.getBestMove();
+            if (bestMove == -1) { // Stopped before even the first depth finished.
+                bestMove = searchGame.getGameBoard().getLegal()[0];
+            }
+            out.send("bestmove " + (bestMove + 1));
+        }, "search");
+        searchThread.start();
+    }
+
+    /**
+     * Stops the running search (if any) and waits for it to send its best move.
+     */
+    private void stopSearch() throws InterruptedException {
+        if (searchThread != null) {
+            searchThread.interrupt();
+            searchThread.join();
+            searchThread = null;
+        }
+    }
+
+    /**
+     * Returns the info line for the result of a depth.
+     *
+     * @param empty The empty spaces on the board at the root.
+     * @param nanos The time since the search started.
+     */
+    private static String info(SearchResult result, int empty, long nanos) {
+        StringBuilder line = new StringBuilder("info depth ").append(result.getDepth() + 1);
+        int score = result.getScore();
+        if (Math.abs(score) > Search.WIN) {
+            // The plies until the game ends, and so the moves of the player to move.
+            int plies = empty - (Math.abs(score) - Search.WIN);
+            line.append(" score mate ").append((score > 0) ? (plies + 1) / 2 : -(plies / 2));
+        } else {
+            line.append(" score cp ").append(score);
+        }
+        long millis = nanos / 1000000;
+        line.append(" nodes ").append(result.getNodes());
+        line.append(" nps ").append(result.getNodes() * 1000000000L / Math.max(nanos, 1));
+        line.append(" time ").append(millis);
+        line.append(" pv");
+        for (int column : result.getPrincipalVariation()) {
+            line.append(' ').append(column + 1);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Writes lines to the output on a thread of its own, so that the threads
+     * sending them never wait for it.
+     */
+    private static class Output implements Runnable {
+        private static final String END = new String("end"); // Compared by reference.
+
+        private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        private final PrintWriter writer;
+        private final Thread thread;
+
+        Output(OutputStream output) {
+            writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.US_ASCII), false);
+            thread = new Thread(this, "output");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Queues a line to be written.
+         */
+        void send(String line) {
+            lines.add(line);
+        }
+
+        /**
+         * Writes the lines still queued, and stops.
+         */
+        void close() throws InterruptedException {
+            lines.add(END);
+            thread.join();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    String line = lines.take();
+                    if (line == END) {
+                        break;
+                    }
+                    writer.print(line);
+                    writer.print('\n');
+                    if (lines.isEmpty()) {
+                        writer.flush(); // Flushed once the queue is empty, not after every line.
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer.flush();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package connectgame.tools;
+
+import connectgame.engine.BoardBatch;
+import connectgame.engine.FastRandom;
+import connectgame.engine.GameBoard;
+
+/**
+ * <h4>BatchBenchmark</h4>
+ * <p>
+ * A headless, single threaded benchmark for {@link BoardBatch}. A population
+ * of random positions is checked for wins, and played out at random, three
+ * ways: one GameBoard at a time ({@code checkWin()} and
+ * {@code randomPlayout}), and as a BoardBatch with the scalar and (if
+ * available) the Vector API kernels. It prints the boards per second of each.
+ * <p>
+ * Run with {@code --add-modules jdk.incubator.vector} to include the vector
+ * kernel.
+ * <p>
+ * Usage: {@code BatchBenchmark [boards] [seconds] [columns rows toWin]}
+ */
+public class BatchBenchmark {
+
+    public static void main(String[] args) {
+        int boards = (args.length > 0) ? Integer.parseInt(args[0]) : 4096;
+        double seconds = (args.length > 1) ? Double.parseDouble(args[1]) : 3;
+        int columns = (args.length > 4) ? Integer.parseInt(args[2]) : 7;
+        int rows = (args.length > 4) ? Integer.parseInt(args[3]) : 6;
+        int toWin = (args.length > 4) ? Integer.parseInt(args[4]) : 4;
+
+        GameBoard[] positions = randomPositions(boards, columns, rows, toWin, new FastRandom(1));
+        BoardBatch scalar = new BoardBatch(columns, rows, toWin, boards, false);
+        BoardBatch vector = new BoardBatch(columns, rows, toWin, boards, true);
+        for (GameBoard position : positions) {
+            scalar.add(position);
+            vector.add(position);
+        }
+        System.out.println("Board " + columns + "x" + rows + ", " + toWin + " to win, " + boards + " boards, "
+                + (BoardBatch.isVectorAvailable() ? "vector " : "no vector ") + "module");
+        for (int pass = 0; pass < 2; pass++) { // The first pass is the warmup.
+            double time = (pass == 0) ? Math.min(1, seconds) : seconds;
+            boolean print = pass == 1;
+            double single = checkWins(positions, time, print);
+            double batched = checkWins(scalar, time, print);
+            if (BoardBatch.isVectorAvailable()) {
+                batched = checkWins(vector, time, print);
+            }
+            if (print) {
+                System.out.printf("checkWins speedup: %.1fx%n", batched / single);
+            }
+            single = playouts(positions, time, print);
+            batched = playouts(scalar, time, print);
+            if (BoardBatch.isVectorAvailable()) {
+                batched = playouts(vector, time, print);
+            }
+            if (print) {
+                System.out.printf("randomPlayouts speedup: %.1fx%n", batched / single);
+            }
+        }
+    }
+
+    /**
+     * Returns positions reached by random moves, none of them finished.
+     */
+    private static GameBoard[] randomPositions(int count, int columns, int rows, int toWin, FastRandom random) {
+        GameBoard[] positions = new GameBoard[count];
+        for (int i = 0; i < count; i++) {
+            GameBoard board = new GameBoard(columns, rows, toWin);
+            int moves = random.nextInt(columns * rows / 2);
+            int disk = GameBoard.RED;
+            for (int k = 0; k < moves; k++) {
+                int column = board.getRandomLegal(random);
+                board.putDisk(disk, column);
+                if (board.checkWin() != 0) {
+                    board.popDisk(column);
+                    break;
+                }
+                disk = 3 - disk;
+            }
+            positions[i] = board;
+        }
+        return positions;
+    }
+
+    private static double checkWins(GameBoard[] positions, double seconds, boolean print) {
+        final long end = System.nanoTime() + (long) (seconds * 1e9);
+        final long startTime = System.nanoTime();
+        long checks = 0;
+        int sum = 0;
+        while (System.nanoTime() < end) {
+            for (GameBoard position : positions) {
+                sum += position.checkWin();
+            }
+            checks += positions.length;
+        }
+        return report("GameBoard.checkWin", checks, startTime, sum, print);
+    }
+
+    private static double checkWins(BoardBatch batch, double seconds, boolean print) {
+        final int[] results = new int[batch.size()];
+        final long end = System.nanoTime() + (long) (seconds * 1e9);
+        final long startTime = System.nanoTime();
+        long checks = 0;
+        int sum = 0;
+        while (System.nanoTime() < end) {
+            batch.checkWins(results);
+            sum += results[0];
+            checks += batch.size();
+        }
+        return report("checkWins " + batch.getKernelName(), checks, startTime, sum, print);
+    }
+
+    private static double playouts(GameBoard[] positions, double seconds, boolean print) {
+        final FastRandom random = new FastRandom(2);
+        final long end = System.nanoTime() + (long) (seconds * 1e9);
+        final long startTime = System.nanoTime();
+        long playouts = 0;
+        int sum = 0;
+        while (System.nanoTime() < end) {
+            for (GameBoard position : positions) {
+                sum += position.randomPlayout(GameBoard.RED, random);
+            }
+            playouts += positions.length;
+        }
+        return report("GameBoard.randomPlayout", playouts, startTime, sum, print);
+    }
+
+    private static double playouts(BoardBatch batch, double seconds, boolean print) {
+        final FastRandom random = new FastRandom(2);
+        final int[] results = new int[batch.size()];
+        final long end = System.nanoTime() + (long) (seconds * 1e9);
+        final long startTime = System.nanoTime();
+        long playouts = 0;
+        int sum = 0;
+        while (System.nanoTime() < end) {
+            batch.randomPlayouts(GameBoard.RED, random, results);
+            sum += results[0];
+            playouts += batch.size();
+        }
+        return report("randomPlayouts " + batch.getKernelName(), playouts, startTime, sum, print);
+    }
+
+    /**
+     * Prints (if asked) and returns the boards per second. The sum of the
+     * results is only taken so the work can't be optimized away.
+     */
+    private static double report(String name, long boards, long startTime, int sum, boolean print) {
+        double perSecond = boards / ((System.nanoTime() - startTime) / 1e9);
+        if (print) {
+            System.out.printf("%-34s %,14.0f boards/s%s%n", name, perSecond, (sum == -1) ? " " : "");
+        }
+        return perSecond;
+    }
+}
@@ -0,0 +1,216 @@
+package connectgame.tools;
+
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import connectgame.engine.MoveAnnotator;
+import connectgame.records.GameRecord;
+import connectgame.records.GameRecordReader;
+import connectgame.records.GameRecordWriter;
+
+/**
+ * <h4>BlunderAnnotator</h4>
+ * <p>
+ * A batch pipeline that annotates every move of the games in a game-record
+ * file with the engine's score (see {@link MoveAnnotator}), and lists the
+ * blunders.
+ * <p>
+ * The games are streamed from the input file, annotated in parallel (one task
+ * per game on a work-stealing pool, each worker thread reusing its own
+ * annotator and transposition table), and written out in their original
+ * order. Only a fixed window of games is ever in flight: the reader waits for
+ * the oldest game to be finished before reading another, and the GameRecords
+ * are recycled, so memory stays flat however big the file is.
+ * <p>
+ * The output is a game-record file with stats for every move (the score of the
+ * move played, the depth, nodes and time), and a CSV file of blunders:
+ * {@code game,ply,column,bestColumn,score,bestScore} (columns from 1, ply from
+ * 0).
+ * <p>
+ * Usage: {@code BlunderAnnotator <in> <out> <blundersCsv> [depth=8] [moveMillis=20] [threads]}
+ */
+public class BlunderAnnotator {
+    private static final int TABLE_CAPACITY = 250_000; // Per worker thread (about 20MB each).
+    private static final int GAMES_PER_THREAD = 8; // In flight, for the window.
+
+    private final int depth;
+    private final long moveMillis;
+    private final ForkJoinPool pool;
+    private final int window;
+    private final ThreadLocal<MoveAnnotator> annotators;
+
+    // Totals
+    private long games = 0;
+    private long moves = 0;
+    private long incomplete = 0;
+    private long blunders = 0;
+    private long skipped = 0;
+
+    /**
+     * A game being annotated. The record is annotated in place.
+     */
+    private static class Job {
+        long index;
+        GameRecord record;
+        int[] columns = new int[0];
+        StringBuilder blunderLines = new StringBuilder();
+        int blunders;
+        int incomplete;
+        boolean illegal; // The game had an illegal move, so it is skipped.
+    }
+
+    /**
+     * Constructs a new BlunderAnnotator.
+     *
+     * @param depth      The maximum depth to search each move to.
+     * @param moveMillis The maximum time to spend on each move.
+     * @param threads    The amount of worker threads.
+     */
+    public BlunderAnnotator(int depth, long moveMillis, int threads) {
+        this.depth = depth;
+        this.moveMillis = moveMillis;
+        this.pool = new ForkJoinPool(threads);
+        this.window = threads * GAMES_PER_THREAD;
+        this.annotators = new ThreadLocal<>();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println(
+                    "Usage: BlunderAnnotator <in> <out> <blundersCsv> [depth=8] [moveMillis=20] [threads]");
+            return;
+        }
+        int depth = (args.length > 3) ? Integer.parseInt(args[3]) : 8;
+        long moveMillis = (args.length > 4) ? Long.parseLong(args[4]) : 20;
+        int threads = (args.length > 5) ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+        BlunderAnnotator annotator = new BlunderAnnotator(depth, moveMillis, threads);
+        long startTime = System.nanoTime();
+        annotator.run(args[0], args[1], args[2]);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("%,d games, %,d moves in %.1fs (%,.0f games/s) on %d threads%n", annotator.games,
+                annotator.moves, seconds, annotator.games / seconds, threads);
+        System.out.printf("%,d blunders, %,d moves ran out of time, %,d illegal games skipped%n",
+                annotator.blunders, annotator.incomplete, annotator.skipped);
+    }
+
+    /**
+     * Annotates every game in the input file.
+     *
+     * @param in          The game-record file to read.
+     * @param out         The game-record file to write the annotated games to.
+     * @param blundersCsv The CSV file to list the blunders in.
+     */
+    public void run(String in, String out, String blundersCsv) throws IOException {
+        ArrayDeque<ForkJoinTask<Job>> inFlight = new ArrayDeque<>(window);
+        ArrayDeque<Job> spareJobs = new ArrayDeque<>(window);
+        try (GameRecordReader reader = new GameRecordReader(Paths.get(in));
+                GameRecordWriter writer = new GameRecordWriter(Paths.get(out), reader.getColumns(),
+                        reader.getRows(), reader.getToWin());
+                BufferedWriter csv = Files.newBufferedWriter(Paths.get(blundersCsv), StandardCharsets.US_ASCII)) {
+            csv.write("game,ply,column,bestColumn,score,bestScore\n");
+            try {
+                while (true) {
+                    if (inFlight.size() == window) {
+                        // Backpressure: finish the oldest game before reading another.
+                        spareJobs.push(finish(inFlight.poll().join(), writer, csv));
+                    }
+                    Job job = spareJobs.isEmpty() ? new Job() : spareJobs.pop();
+                    if (job.record == null) {
+                        job.record = reader.newRecord();
+                    }
+                    if (!reader.next(job.record)) {
+                        break;
+                    }
+                    job.index = reader.getGamesRead() - 1;
+                    inFlight.add(pool.submit(() -> annotate(job)));
+                }
+            } catch (EOFException e) {
+                System.err.println("The input ends part way through a game; annotating the games before it.");
+            }
+            while (!inFlight.isEmpty()) {
+                finish(inFlight.poll().join(), writer, csv);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Annotates a game (in a worker thread).
+     */
+    private Job annotate(Job job) {
+        MoveAnnotator annotator = annotators.get();
+        GameRecord record = job.record;
+        if (annotator == null) {
+            annotator = new MoveAnnotator(record.getColumns(), record.getRows(), record.getToWin(), TABLE_CAPACITY);
+            annotators.set(annotator);
+        }
+        // Take the moves out, as the record is rebuilt with the new stats.
+        final int moveCount = record.getMoveCount();
+        final int result = record.getResult();
+        if (job.columns.length < moveCount) {
+            job.columns = new int[moveCount];
+        }
+        for (int i = 0; i < moveCount; i++) {
+            job.columns[i] = record.getMove(i);
+        }
+        record.clear();
+        job.blunderLines.setLength(0);
+        job.blunders = 0;
+        job.incomplete = 0;
+        job.illegal = false;
+        annotator.reset();
+        for (int ply = 0; ply < moveCount; ply++) {
+            long startTime = System.nanoTime();
+            MoveAnnotator.Annotation annotation;
+            try {
+                annotation = annotator.annotate(job.columns[ply], depth, moveMillis);
+            } catch (IllegalArgumentException e) {
+                job.illegal = true;
+                return job;
+            }
+            long timeMicros = (System.nanoTime() - startTime) / 1000;
+            if (!annotation.isComplete()) {
+                job.incomplete++;
+                record.addMove(annotation.getColumn());
+                continue;
+            }
+            record.addMove(annotation.getColumn(), annotation.getScore(), annotation.getDepth(),
+                    annotation.getNodes(), timeMicros);
+            if (annotation.isBlunder()) {
+                job.blunders++;
+                job.blunderLines.append(job.index).append(',').append(ply).append(',')
+                        .append(annotation.getColumn() + 1).append(',').append(annotation.getBestMove() + 1)
+                        .append(',').append(annotation.getScore()).append(',').append(annotation.getBestScore())
+                        .append('\n');
+            }
+        }
+        record.setResult(result);
+        return job;
+    }
+
+    /**
+     * Writes out a finished game (in the reading thread) and returns its job for
+     * reuse.
+     */
+    private Job finish(Job job, GameRecordWriter writer, BufferedWriter csv) throws IOException {
+        if (job.illegal) {
+            skipped++;
+            return job;
+        }
+        writer.write(job.record);
+        csv.append(job.blunderLines);
+        games++;
+        moves += job.record.getMoveCount();
+        incomplete += job.incomplete;
+        blunders += job.blunders;
+        return job;
+    }
+}
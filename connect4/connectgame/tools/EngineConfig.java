@@ -0,0 +1,149 @@
+package connectgame.tools;
+
+import connectgame.engine.ConnectN;
+import connectgame.engine.Strategy;
+
+/**
+ * <h4>EngineConfig</h4>
+ * <p>
+ * A set of engine settings that can be applied to a {@link ConnectN} game
+ * (such as a Connect4), so that differently configured engines can be
+ * compared.
+ * <p>
+ * A config is written as a short String, a strategy name followed by
+ * optional settings, for example:
+ * <ul>
+ * <li>{@code minimax:depth=8} (fixed depth)</li>
+ * <li>{@code minimax:depth=20,time=100,tt=1000000} (iterative deepening, at
+ * most 100ms per move, a million table entries)</li>
+ * <li>{@code minimax:depth=8,shared=true} (the transposition table shared by
+ * all games in the process, see {@code ConnectN.setSharedTable})</li>
+ * <li>{@code minimax:depth=8,eval=false} (no static evaluation)</li>
+ * <li>{@code minimax:depth=8,draws=false} (only a full board is a draw)</li>
+ * <li>{@code mcts:playouts=20000,rave=false}</li>
+ * <li>{@code random}</li>
+ * </ul>
+ */
+public class EngineConfig {
+    private final String spec;
+    private String strategy = "minimax";
+    private int depth = 8;
+    private boolean adaptive = false;
+    private long timeMillis = 0;
+    private int tableCapacity = 1_000_000;
+    private boolean sharedTable = false;
+    private long playouts = 20_000;
+    private boolean rave = true;
+    private boolean evaluation = true;
+    private boolean drawDetection = true;
+
+    /**
+     * Parses an EngineConfig from a String (see the class description).
+     *
+     * @param spec The config String.
+     * @throws IllegalArgumentException if the String isn't a valid config.
+     */
+    public EngineConfig(String spec) {
+        this.spec = spec;
+        String[] parts = spec.split(":", 2);
+        strategy = parts[0].trim().toLowerCase();
+        if (!strategy.equals("minimax") && !strategy.equals("mcts") && !strategy.equals("random")) {
+            throw new IllegalArgumentException("Unknown strategy: " + parts[0]);
+        }
+        if (parts.length == 1 || parts[1].isBlank()) {
+            return;
+        }
+        for (String setting : parts[1].split(",")) {
+            String[] keyValue = setting.split("=", 2);
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("Settings must be written as name=value: " + setting);
+            }
+            String value = keyValue[1].trim();
+            switch (keyValue[0].trim().toLowerCase()) {
+                case "depth":
+                    depth = Integer.parseInt(value);
+                    break;
+                case "adaptive":
+                    adaptive = Boolean.parseBoolean(value);
+                    break;
+                case "time":
+                    timeMillis = Long.parseLong(value);
+                    break;
+                case "tt":
+                    tableCapacity = Integer.parseInt(value);
+                    break;
+                case "shared":
+                    sharedTable = Boolean.parseBoolean(value);
+                    break;
+                case "playouts":
+                    playouts = Long.parseLong(value);
+                    break;
+                case "rave":
+                    rave = Boolean.parseBoolean(value);
+                    break;
+                case "eval":
+                    evaluation = Boolean.parseBoolean(value);
+                    break;
+                case "draws":
+                    drawDetection = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown setting: " + keyValue[0]);
+            }
+        }
+    }
+
+    /**
+     * Whether this config plays random moves instead of searching.
+     */
+    public boolean isRandom() {
+        return strategy.equals("random");
+    }
+
+    /**
+     * Whether this config searches with minimax.
+     */
+    public boolean isMinimax() {
+        return strategy.equals("minimax");
+    }
+
+    /**
+     * Applies this config to a new game. Any searches the game does will be
+     * single threaded, as games are expected to be run in parallel instead.
+     *
+     * @param game The game to configure (which should not have been played yet).
+     */
+    public void configure(ConnectN game) {
+        game.setPondering(false);
+        game.setTableCapacity(tableCapacity);
+        game.setSharedTable(sharedTable);
+        if (strategy.equals("mcts")) {
+            game.setStrategy(Strategy.MONTE_CARLO);
+            game.setMonteCarloBudget(playouts, timeMillis);
+            game.setMonteCarloWorkers(1);
+            game.setRave(rave);
+        } else {
+            game.setStrategy(Strategy.MINIMAX);
+            game.setDepth(depth, adaptive);
+            game.setTimeBudget(timeMillis);
+            game.setEvaluation(evaluation);
+            game.setDrawDetection(drawDetection);
+        }
+    }
+
+    /**
+     * Plays a move in the game with this config.
+     */
+    public void playMove(ConnectN game) {
+        if (isRandom()) {
+            game.playRandom();
+        } else {
+            game.playComputer();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
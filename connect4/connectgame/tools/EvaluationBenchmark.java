@@ -0,0 +1,171 @@
+package connectgame.tools;
+
+import java.util.Arrays;
+
+import connectgame.engine.ConnectN;
+import connectgame.engine.FastRandom;
+import connectgame.engine.Search;
+import connectgame.engine.SearchResult;
+
+/**
+ * <h4>EvaluationBenchmark</h4>
+ * <p>
+ * A headless benchmark for the static evaluation (see
+ * {@link connectgame.engine.GameBoard#getEvaluation}). It finds random
+ * positions where a deep search (to {@code referenceDepth}) proves that some
+ * moves win and others don't, but a shallow one doesn't find the win yet, then searches each position again with
+ * iterative deepening, with and without the evaluation, and measures the time
+ * and nodes until the best move is a winning one and stays one at every
+ * deeper depth (the time to the equal move). An engine that never gets there
+ * is counted at the full reference depth.
+ * <p>
+ * Usage: {@code EvaluationBenchmark [positions] [referenceDepth] [columns rows toWin]}
+ */
+public class EvaluationBenchmark {
+    // Positions where a search this deep already finds the win are too easy to count.
+    private static final int SHALLOW_DEPTH = 3;
+
+    public static void main(String[] args) {
+        int positions = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+        int referenceDepth = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        int columns = (args.length > 4) ? Integer.parseInt(args[2]) : 7;
+        int rows = (args.length > 4) ? Integer.parseInt(args[3]) : 6;
+        int toWin = (args.length > 4) ? Integer.parseInt(args[4]) : 4;
+
+        System.out.println("Board " + columns + "x" + rows + ", " + toWin + " to win, " + positions
+                + " positions, reference depth " + referenceDepth);
+        FastRandom random = new FastRandom(1);
+        // Warm up the JIT on both kinds of search first.
+        boolean[] anyMove = new boolean[columns];
+        Arrays.fill(anyMove, true);
+        for (int i = 0; i < 5; i++) {
+            int[] moves = randomOpening(columns, rows, toWin, new FastRandom(100 + i));
+            if (moves != null) {
+                timeToEqualMove(moves, columns, rows, toWin, referenceDepth - 2, anyMove, false);
+                timeToEqualMove(moves, columns, rows, toWin, referenceDepth - 2, anyMove, true);
+            }
+        }
+        long[][] totals = new long[2][3]; // [without, with evaluation][nanoseconds, nodes, depth]
+        double[] logNodes = new double[2];
+        int[] sooner = new int[2];
+        int found = 0;
+        while (found < positions) {
+            int[] moves = randomOpening(columns, rows, toWin, random);
+            if (moves == null) {
+                continue;
+            }
+            boolean[] winning = winningMoves(moves, columns, rows, toWin, referenceDepth);
+            if (winning == null) {
+                continue;
+            }
+            found++;
+            long[] without = timeToEqualMove(moves, columns, rows, toWin, referenceDepth, winning, false);
+            long[] with = timeToEqualMove(moves, columns, rows, toWin, referenceDepth, winning, true);
+            System.out.printf("%-22s without: depth %2d %8.1fms %,12d nodes   with: depth %2d %8.1fms %,12d nodes%n",
+                    Arrays.toString(moves).replace(" ", ""), without[2], without[0] / 1e6, without[1], with[2],
+                    with[0] / 1e6, with[1]);
+            for (int i = 0; i < 3; i++) {
+                totals[0][i] += without[i];
+                totals[1][i] += with[i];
+            }
+            logNodes[0] += Math.log(without[1]);
+            logNodes[1] += Math.log(with[1]);
+            if (without[2] != with[2]) {
+                sooner[(without[2] < with[2]) ? 0 : 1]++;
+            }
+        }
+        // The geometric mean isn't swamped by the few positions that need the full depth either way.
+        String[] names = { "Without evaluation", "With evaluation" };
+        for (int i = 0; i < 2; i++) {
+            System.out.printf("%-19s %8.1fms %,14d nodes (geometric mean %,.0f), mean depth %.1f, sooner in %d%n",
+                    names[i] + ":", totals[i][0] / 1e6, totals[i][1], Math.exp(logNodes[i] / positions),
+                    totals[i][2] / (double) positions, sooner[i]);
+        }
+        System.out.printf("Time to equal move speedup: %.1fx (nodes %.1fx, geometric mean %.1fx)%n",
+                totals[0][0] / (double) totals[1][0], totals[0][1] / (double) totals[1][1],
+                Math.exp((logNodes[0] - logNodes[1]) / positions));
+    }
+
+    /**
+     * Returns the moves of a random game of a random length that hasn't ended,
+     * or null if it did.
+     */
+    private static int[] randomOpening(int columns, int rows, int toWin, FastRandom random) {
+        ConnectN game = new ConnectN(columns, rows, toWin);
+        int[] moves = new int[4 + random.nextInt(columns * rows / 2)];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = game.getGameBoard().getRandomLegal(random);
+            game.play(moves[i]);
+            if (game.getWinner() != 0) {
+                return null;
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Returns which columns win for the player to move, according to the
+     * current engine (no evaluation) at the reference depth, or null if none
+     * or all of them do, or a shallow search finds the win already (so there's
+     * nothing to find).
+     */
+    private static boolean[] winningMoves(int[] moves, int columns, int rows, int toWin, int depth) {
+        ConnectN game = newGame(moves, columns, rows, toWin, false);
+        game.setDepth(SHALLOW_DEPTH, false);
+        if (game.getBestMoves(1)[0].getScore() > Search.WIN) {
+            return null;
+        }
+        game.setDepth(depth, false);
+        SearchResult[] results = game.getBestMoves(columns);
+        boolean[] winning = new boolean[columns];
+        int count = 0;
+        for (SearchResult result : results) {
+            if (result.getScore() > Search.WIN) {
+                winning[result.getBestMove()] = true;
+                count++;
+            }
+        }
+        return (count == 0 || count == results.length) ? null : winning;
+    }
+
+    /**
+     * Searches at depth 0, 1, 2... up to the reference depth (sharing the
+     * transposition table, like iterative deepening), and returns the time,
+     * nodes and depth up to the first depth from which every best move wins.
+     */
+    private static long[] timeToEqualMove(int[] moves, int columns, int rows, int toWin, int referenceDepth,
+            boolean[] winning, boolean evaluation) {
+        ConnectN game = newGame(moves, columns, rows, toWin, evaluation);
+        long[] time = new long[referenceDepth + 1];
+        long[] nodes = new long[referenceDepth + 1];
+        int equalFrom = referenceDepth + 1;
+        long startTime = System.nanoTime();
+        for (int depth = 0; depth <= referenceDepth; depth++) {
+            game.setDepth(depth, false);
+            SearchResult result = game.getBestMoves(1)[0];
+            time[depth] = System.nanoTime() - startTime;
+            nodes[depth] = result.getNodes() + ((depth > 0) ? nodes[depth - 1] : 0);
+            if (!winning[result.getBestMove()]) {
+                equalFrom = referenceDepth + 1;
+            } else if (equalFrom > depth) {
+                equalFrom = depth;
+            }
+        }
+        int depth = Math.min(equalFrom, referenceDepth);
+        return new long[] { time[depth], nodes[depth], depth };
+    }
+
+    /**
+     * Returns a new game with the moves played, set up for a single threaded
+     * fixed depth search.
+     */
+    private static ConnectN newGame(int[] moves, int columns, int rows, int toWin, boolean evaluation) {
+        ConnectN game = new ConnectN(columns, rows, toWin);
+        game.setPondering(false);
+        game.setEvaluation(evaluation);
+        for (int move : moves) {
+            game.play(move);
+        }
+        return game;
+    }
+}
@@ -0,0 +1,89 @@
+package connectgame.tools;
+
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import connectgame.engine.FastRandom;
+import connectgame.engine.GameBoard;
+
+/**
+ * <h4>PlayoutBenchmark</h4>
+ * <p>
+ * A headless benchmark for random playouts. It runs
+ * {@link GameBoard#randomPlayout(int, FastRandom)} on every thread for a fixed
+ * time and prints the playouts per second, next to the old way of playing a
+ * random game ({@code getLegal()}, a shared {@code java.util.Random} and
+ * {@code checkWin()}) for comparison.
+ * <p>
+ * Usage: {@code PlayoutBenchmark [threads] [seconds] [columns rows toWin]}
+ */
+public class PlayoutBenchmark {
+    private static final Random SHARED_RANDOM = new Random();
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        double seconds = (args.length > 1) ? Double.parseDouble(args[1]) : 5;
+        int columns = (args.length > 4) ? Integer.parseInt(args[2]) : 7;
+        int rows = (args.length > 4) ? Integer.parseInt(args[3]) : 6;
+        int toWin = (args.length > 4) ? Integer.parseInt(args[4]) : 4;
+
+        System.out.println("Board " + columns + "x" + rows + ", " + toWin + " to win, " + threads + " threads");
+        run("warmup", threads, 1, columns, rows, toWin, true);
+        double fast = run("randomPlayout", threads, seconds, columns, rows, toWin, true);
+        double old = run("getLegal/Random/checkWin", threads, seconds, columns, rows, toWin, false);
+        System.out.printf("Speedup: %.1fx%n", fast / old);
+    }
+
+    /**
+     * Runs playouts on the given amount of threads for the given time.
+     *
+     * @return The playouts per second.
+     */
+    private static double run(String name, int threads, double seconds, int columns, int rows, int toWin,
+            boolean fast) throws InterruptedException {
+        final LongAdder playouts = new LongAdder();
+        final long end = System.nanoTime() + (long) (seconds * 1e9);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                GameBoard board = new GameBoard(columns, rows, toWin);
+                FastRandom random = FastRandom.current();
+                long count = 0;
+                while ((count & 255) != 0 || System.nanoTime() < end) {
+                    if (fast) {
+                        board.randomPlayout(GameBoard.RED, random);
+                    } else {
+                        oldPlayout(board);
+                    }
+                    count++;
+                }
+                playouts.add(count);
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double perSecond = playouts.sum() / seconds;
+        System.out.printf("%-26s %,14.0f playouts/s%n", name, perSecond);
+        return perSecond;
+    }
+
+    /**
+     * A random playout the way {@code Connect4.playRandom()} used to do it.
+     */
+    private static void oldPlayout(GameBoard board) {
+        int disk = GameBoard.RED;
+        while (board.checkWin() == 0) {
+            int[] legal = board.getLegal();
+            board.putDisk(disk, legal[SHARED_RANDOM.nextInt(legal.length)]);
+            disk = 3 - disk;
+        }
+        int[] heights = board.getNextDiskIndices();
+        for (int i = 0; i < board.columns(); i++) {
+            while (heights[i] > 0) {
+                board.popDisk(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package connectgame.tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import connectgame.engine.FastRandom;
+import connectgame.engine.GameBoard;
+import connectgame.records.GameRecord;
+import connectgame.records.GameRecordReader;
+import connectgame.records.PositionIndex;
+import connectgame.records.PositionIndexBuilder;
+
+/**
+ * <h4>PositionQuery</h4>
+ * <p>
+ * Builds and queries a {@link PositionIndex} over a game-record file.
+ * <p>
+ * Usage:
+ * <ul>
+ * <li>{@code PositionQuery build <records> <index>} - builds the index.</li>
+ * <li>{@code PositionQuery query <index> <records> <moves>} - shows the
+ * results of the games that reached the position after the given moves
+ * (columns from 1, e.g. "4435"; "-" for the empty board), and the first few
+ * of those games.</li>
+ * <li>{@code PositionQuery bench <index> [lookups]} - times lookups of
+ * random positions.</li>
+ * </ul>
+ */
+public class PositionQuery {
+    private static final int GAMES_SHOWN = 5;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("build")) {
+            build(Paths.get(args[1]), Paths.get(args[2]));
+        } else if (args.length >= 4 && args[0].equals("query")) {
+            query(Paths.get(args[1]), Paths.get(args[2]), args[3]);
+        } else if (args.length >= 2 && args[0].equals("bench")) {
+            bench(Paths.get(args[1]), (args.length > 2) ? Integer.parseInt(args[2]) : 1_000_000);
+        } else {
+            System.out.println("Usage: PositionQuery build <records> <index>");
+            System.out.println("       PositionQuery query <index> <records> <moves>");
+            System.out.println("       PositionQuery bench <index> [lookups]");
+        }
+    }
+
+    private static void build(Path records, Path index) throws IOException {
+        long startTime = System.nanoTime();
+        PositionIndexBuilder builder = new PositionIndexBuilder(PositionIndexBuilder.DEFAULT_RUN_PAIRS);
+        builder.build(records, index);
+        System.out.printf("Indexed %,d games: %,d positions, %,d game refs in %.1fs%n", builder.getGames(),
+                builder.getPositions(), builder.getGameRefs(), (System.nanoTime() - startTime) / 1e9);
+    }
+
+    private static void query(Path indexPath, Path records, String moves) throws IOException {
+        try (PositionIndex index = new PositionIndex(indexPath);
+                GameRecordReader reader = new GameRecordReader(records)) {
+            GameBoard board = new GameBoard(index.getColumns(), index.getRows(), index.getToWin());
+            int disk = GameBoard.RED;
+            for (char move : moves.equals("-") ? new char[0] : moves.toCharArray()) {
+                board.putDisk(disk, move - '1');
+                disk = 3 - disk;
+            }
+            long startTime = System.nanoTime();
+            PositionIndex.Entry entry = index.lookup(board);
+            System.out.printf("Lookup took %.3f ms%n", (System.nanoTime() - startTime) / 1e6);
+            if (entry == null) {
+                System.out.println("No games reached this position.");
+                return;
+            }
+            System.out.println(entry);
+            GameRecord game = reader.newRecord();
+            for (long offset : index.getGameOffsets(entry, GAMES_SHOWN)) {
+                reader.seek(offset);
+                reader.next(game);
+                System.out.println("  " + game);
+            }
+        }
+    }
+
+    private static void bench(Path indexPath, int lookups) throws IOException {
+        try (PositionIndex index = new PositionIndex(indexPath)) {
+            GameBoard board = new GameBoard(index.getColumns(), index.getRows(), index.getToWin());
+            FastRandom random = new FastRandom(7);
+            long[] nanos = new long[lookups];
+            int found = 0;
+            for (int i = 0; i < lookups; i++) {
+                // A random position of up to 12 plies, which is likely to be in the index.
+                board.clearBoard();
+                int plies = random.nextInt(13);
+                for (int ply = 0; ply < plies && board.checkWin() == 0; ply++) {
+                    board.putDisk(1 + ply % 2, board.getRandomLegal(random));
+                }
+                long startTime = System.nanoTime();
+                if (index.lookup(board) != null) {
+                    found++;
+                }
+                nanos[i] = System.nanoTime() - startTime;
+            }
+            Arrays.sort(nanos);
+            System.out.printf("%,d positions in the index; %,d lookups, %,d found%n", index.getPositionCount(),
+                    lookups, found);
+            System.out.printf("Lookup us: p50 %.1f  p99 %.1f  max %.1f%n", nanos[lookups / 2] / 1e3,
+                    nanos[lookups * 99 / 100] / 1e3, nanos[lookups - 1] / 1e3);
+        }
+    }
+}
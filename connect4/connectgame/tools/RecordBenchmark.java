@@ -0,0 +1,106 @@
+package connectgame.tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import connectgame.engine.Connect4;
+import connectgame.engine.FastRandom;
+import connectgame.engine.MoveHistory;
+import connectgame.records.GameRecord;
+import connectgame.records.GameRecordReader;
+import connectgame.records.GameRecordWriter;
+
+/**
+ * <h4>RecordBenchmark</h4>
+ * <p>
+ * Writes random games (with made up engine stats for every other move) to a
+ * game-record file, then reads them back and checks them, and reports the
+ * size per game and the write and read speeds.
+ * <p>
+ * Usage: {@code RecordBenchmark [games] [file]} (default 1,000,000 games to a
+ * temporary file, which is deleted afterwards).
+ */
+public class RecordBenchmark {
+    public static void main(String[] args) throws IOException {
+        long games = (args.length > 0) ? Long.parseLong(args[0]) : 1_000_000;
+        Path path = (args.length > 1) ? Paths.get(args[1]) : Files.createTempFile("games", ".c4gr");
+        Files.deleteIfExists(path);
+        Connect4 game = new Connect4();
+        GameRecord record = new GameRecord(game.columns(), game.rows(), game.toWin());
+
+        // Write
+        FastRandom random = new FastRandom(1);
+        long checksum = 0;
+        long writeNanos = 0; // Only the writing is timed, not making up the games.
+        try (GameRecordWriter writer = new GameRecordWriter(path, game.columns(), game.rows(), game.toWin())) {
+            for (long i = 0; i < games; i++) {
+                randomGame(game, record, random);
+                checksum += checksum(record);
+                long startTime = System.nanoTime();
+                writer.write(record);
+                writeNanos += System.nanoTime() - startTime;
+            }
+            long startTime = System.nanoTime();
+            writer.flush();
+            writeNanos += System.nanoTime() - startTime;
+        }
+        double writeSeconds = writeNanos / 1e9;
+        long bytes = Files.size(path);
+        System.out.printf("Wrote %,d games in %.2fs (%,.0f games/s, %.1f bytes/game, %.1f MB)%n", games,
+                writeSeconds, games / writeSeconds, (double) bytes / games, bytes / 1e6);
+
+        // Read
+        long readChecksum = 0;
+        long startTime = System.nanoTime();
+        try (GameRecordReader reader = new GameRecordReader(path)) {
+            GameRecord readRecord = reader.newRecord();
+            while (reader.next(readRecord)) {
+                readChecksum += checksum(readRecord);
+            }
+            double readSeconds = (System.nanoTime() - startTime) / 1e9;
+            System.out.printf("Read %,d games in %.2fs (%,.0f games/s, %.0f MB/s)%n", reader.getGamesRead(),
+                    readSeconds, reader.getGamesRead() / readSeconds, bytes / 1e6 / readSeconds);
+        }
+        System.out.println(readChecksum == checksum ? "Checksums match" : "CHECKSUM MISMATCH");
+        if (args.length < 2) {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Plays a random game to the end and puts it in the record, with stats for
+     * YELLOW's moves (as if YELLOW was the computer).
+     */
+    private static void randomGame(Connect4 game, GameRecord record, FastRandom random) {
+        while (game.undoLast()) {
+            // Back to the start
+        }
+        record.clear();
+        while (game.getWinner() == 0) {
+            game.play(game.getGameBoard().getRandomLegal(random));
+            MoveHistory history = game.getHistory();
+            int column = history.lastColumn();
+            if (history.size() % 2 == 0) {
+                record.addMove(column, random.nextInt(200) - 100, 8 + random.nextInt(4),
+                        1000 + random.nextInt(100_000), 50 + random.nextInt(5000));
+            } else {
+                record.addMove(column);
+            }
+        }
+        record.setResult(game.getWinner());
+    }
+
+    private static long checksum(GameRecord record) {
+        long sum = record.getResult();
+        for (int i = 0; i < record.getMoveCount(); i++) {
+            sum = sum * 31 + record.getMove(i);
+            if (record.hasStats(i)) {
+                sum = sum * 31 + record.getScore(i) + record.getDepth(i) + record.getNodes(i)
+                        + record.getTimeMicros(i);
+            }
+        }
+        return sum;
+    }
+}
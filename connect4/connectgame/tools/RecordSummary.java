@@ -0,0 +1,57 @@
+package connectgame.tools;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import connectgame.records.GameRecord;
+import connectgame.records.GameRecordReader;
+
+/**
+ * <h4>RecordSummary</h4>
+ * <p>
+ * Streams through a game-record file and prints a summary: the amount of
+ * games and moves, the results, and the average engine depth, nodes and time
+ * per move.
+ * <p>
+ * Usage: {@code RecordSummary <file>}
+ */
+public class RecordSummary {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: RecordSummary <file>");
+            return;
+        }
+        long[] results = new long[4];
+        long moves = 0;
+        long engineMoves = 0;
+        long depth = 0;
+        long nodes = 0;
+        long timeMicros = 0;
+        long startTime = System.nanoTime();
+        try (GameRecordReader reader = new GameRecordReader(Paths.get(args[0]))) {
+            GameRecord game = reader.newRecord();
+            while (reader.next(game)) {
+                results[game.getResult()]++;
+                moves += game.getMoveCount();
+                for (int i = 0; i < game.getMoveCount(); i++) {
+                    if (game.hasStats(i)) {
+                        engineMoves++;
+                        depth += game.getDepth(i);
+                        nodes += game.getNodes(i);
+                        timeMicros += game.getTimeMicros(i);
+                    }
+                }
+            }
+            long games = reader.getGamesRead();
+            System.out.printf("%dx%d connect %d: %,d games, %,d moves (%.1f per game)%n", reader.getColumns(),
+                    reader.getRows(), reader.getToWin(), games, moves, (double) moves / Math.max(games, 1));
+        }
+        System.out.printf("Results: red %,d  yellow %,d  draw %,d  unfinished %,d%n", results[1], results[2],
+                results[3], results[0]);
+        if (engineMoves > 0) {
+            System.out.printf("Engine moves: %,d, average depth %.1f, %,.0f nodes, %.2f ms%n", engineMoves,
+                    (double) depth / engineMoves, (double) nodes / engineMoves, timeMicros / 1000.0 / engineMoves);
+        }
+        System.out.printf("(read in %.2fs)%n", (System.nanoTime() - startTime) / 1e9);
+    }
+}
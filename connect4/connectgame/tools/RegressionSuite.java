@@ -0,0 +1,424 @@
+package connectgame.tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import connectgame.engine.Connect4;
+import connectgame.engine.FastRandom;
+import connectgame.engine.GameBoard;
+import connectgame.engine.Search;
+import connectgame.engine.SearchResult;
+
+/**
+ * <h4>RegressionSuite</h4>
+ * <p>
+ * A headless correctness and performance check of the Connect4 engine against
+ * a suite of positions with known exact scores (by default
+ * {@code connect4/suite/positions.txt}, with openings, midgames and endgames).
+ * It only uses the engine, so it needs none of the GUI's images or sounds.
+ * <p>
+ * Each line of a suite is a position: its phase, the moves from an empty
+ * board (columns from 1, as in {@link PositionQuery}), the search depth (as in
+ * {@link Search#search}) at which the score is certain, the score (as given by
+ * the search, so a win or loss is {@code Search.WIN} plus the empty spaces left
+ * when it happens), and a node budget. A score is only in a suite if it is the
+ * real score of the position with perfect play: either a certain win or loss
+ * found at that depth, or any score of a search to the end of the game.
+ * <p>
+ * {@code run} searches each position once (as a computer move, with a fresh
+ * Connect4, so results don't depend on the order) and writes a report with
+ * one CSV line per position: whether the score was right, and the nodes, time
+ * and nodes/s. Given a baseline (an earlier report), it also prints the
+ * difference. The nodes are the same on every machine (the searches are
+ * single threaded), so they are what the budgets and the diff check; the times
+ * are only compared as a whole. It exits with status 1 if any score is wrong
+ * (with or without a baseline), or if a phase needed more than
+ * {@code NODE_TOLERANCE} times its baseline nodes.
+ * <p>
+ * Usage:
+ * <ul>
+ * <li>{@code RegressionSuite run [suite] [report] [baseline] [engine]} - runs
+ * the suite with the given engine config (see {@link EngineConfig}; the
+ * default settings if not given, but always at each position's depth). A
+ * baseline of {@code -} means none.</li>
+ * <li>{@code RegressionSuite diff <baseline> <report>} - compares two
+ * reports.</li>
+ * <li>{@code RegressionSuite generate <suite> [positionsPerPhase] [seed]} -
+ * makes a new suite from random positions, solved with an engine that does
+ * nothing but search to the end (no static evaluation).</li>
+ * </ul>
+ * For example {@code RegressionSuite run connect4/suite/positions.txt report.csv connect4/suite/baseline.csv}.
+ */
+public class RegressionSuite {
+    public static final String DEFAULT_SUITE = "connect4/suite/positions.txt";
+    public static final String DEFAULT_REPORT = "regression-report.csv";
+    private static final String REPORT_HEADER = "phase,moves,depth,expected,score,passed,nodes,budget,micros,nodesPerSecond";
+    // A phase's nodes may grow this much over the baseline before it counts as a regression.
+    private static final double NODE_TOLERANCE = 1.10;
+    // The budgets allow this many times the nodes the engine needed when the suite was made.
+    private static final int BUDGET_FACTOR = 2;
+    // Positions solved from scratch at the start of a run, to warm up the JIT.
+    private static final int WARMUP_POSITIONS = 50;
+    // Generating gives up on positions that take longer than this to solve.
+    private static final long SOLVE_MILLIS = 250;
+    private static final int BOARD_SPACES = 42;
+    private static final int CHANGES_SHOWN = 10;
+
+    /**
+     * The phases of the game, each with the range of disks on the board.
+     */
+    private enum Phase {
+        OPENING(6, 14), MIDGAME(15, 26), ENDGAME(27, 38);
+
+        final int minDisks;
+        final int maxDisks;
+
+        Phase(int minDisks, int maxDisks) {
+            this.minDisks = minDisks;
+            this.maxDisks = maxDisks;
+        }
+    }
+
+    /**
+     * A position in a suite.
+     */
+    private static class Position {
+        final Phase phase;
+        final String moves;
+        final int depth;
+        final int score;
+        final long budget;
+
+        Position(Phase phase, String moves, int depth, int score, long budget) {
+            this.phase = phase;
+            this.moves = moves;
+            this.depth = depth;
+            this.score = score;
+            this.budget = budget;
+        }
+
+        /**
+         * Returns a new game in this position, with the engine settings given.
+         */
+        Connect4 newGame(EngineConfig engine) {
+            Connect4 game = new Connect4();
+            engine.configure(game);
+            for (char move : moves.toCharArray()) {
+                game.play(move - '1');
+            }
+            game.setDepth(depth, false);
+            return game;
+        }
+    }
+
+    /**
+     * A line of a report.
+     */
+    private static class Result {
+        final Phase phase;
+        final String moves;
+        final boolean passed;
+        final long nodes;
+        final long micros;
+
+        Result(Phase phase, String moves, boolean passed, long nodes, long micros) {
+            this.phase = phase;
+            this.moves = moves;
+            this.passed = passed;
+            this.nodes = nodes;
+            this.micros = micros;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 1 && args[0].equals("run")) {
+            Path suite = Paths.get((args.length > 1) ? args[1] : DEFAULT_SUITE);
+            Path report = Paths.get((args.length > 2) ? args[2] : DEFAULT_REPORT);
+            Path baseline = (args.length > 3 && !args[3].equals("-")) ? Paths.get(args[3]) : null;
+            EngineConfig engine = new EngineConfig((args.length > 4) ? args[4] : "minimax");
+            boolean passed = run(readSuite(suite), engine, report);
+            if (baseline != null) {
+                passed = diff(readReport(baseline), readReport(report)) && passed;
+            }
+            if (!passed) {
+                System.exit(1);
+            }
+        } else if (args.length >= 3 && args[0].equals("diff")) {
+            if (!diff(readReport(Paths.get(args[1])), readReport(Paths.get(args[2])))) {
+                System.exit(1);
+            }
+        } else if (args.length >= 2 && args[0].equals("generate")) {
+            int perPhase = (args.length > 2) ? Integer.parseInt(args[2]) : 1000;
+            long seed = (args.length > 3) ? Long.parseLong(args[3]) : 1;
+            generate(Paths.get(args[1]), perPhase, seed);
+        } else {
+            System.out.println("Usage: RegressionSuite run [suite] [report] [baseline] [engine]");
+            System.out.println("       RegressionSuite diff <baseline> <report>");
+            System.out.println("       RegressionSuite generate <suite> [positionsPerPhase] [seed]");
+        }
+    }
+
+    /**
+     * Runs every position of the suite, writes the report, and prints a summary.
+     *
+     * @return Whether every score was right.
+     */
+    private static boolean run(List<Position> suite, EngineConfig engine, Path report) throws IOException {
+        if (engine.isRandom()) {
+            throw new IllegalArgumentException("The engine must search.");
+        }
+        for (int i = 0; i < Math.min(WARMUP_POSITIONS, suite.size()); i++) {
+            suite.get(i).newGame(engine).playComputer();
+        }
+        List<Result> results = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        int overBudget = 0;
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(report))) {
+            out.println(REPORT_HEADER);
+            for (Position position : suite) {
+                Connect4 game = position.newGame(engine);
+                long startTime = System.nanoTime();
+                game.playComputer();
+                long nanos = System.nanoTime() - startTime;
+                SearchResult result = game.getLastSearchResult();
+                boolean passed = result.getScore() == position.score;
+                if (!passed) {
+                    failures.add(position.phase + " " + position.moves + " depth " + position.depth + ": expected "
+                            + position.score + ", got " + result.getScore());
+                }
+                overBudget += (result.getNodes() > position.budget) ? 1 : 0;
+                results.add(new Result(position.phase, position.moves, passed, result.getNodes(), nanos / 1000));
+                out.printf("%s,%s,%d,%d,%d,%b,%d,%d,%d,%.0f%n", position.phase, position.moves, position.depth,
+                        position.score, result.getScore(), passed, result.getNodes(), position.budget, nanos / 1000,
+                        result.getNodes() / Math.max(nanos / 1e9, 1e-9));
+            }
+        }
+        System.out.println(engine + " on " + suite.size() + " positions:");
+        printTotals(results);
+        System.out.println("Over the node budget: " + overBudget);
+        System.out.println("Wrong scores: " + failures.size());
+        for (String failure : failures.subList(0, Math.min(CHANGES_SHOWN, failures.size()))) {
+            System.out.println("  " + failure);
+        }
+        System.out.println("Report written to " + report);
+        return failures.isEmpty();
+    }
+
+    /**
+     * Prints the differences between a baseline report and a new one: the
+     * nodes and time of each phase, positions that now fail or pass, and those
+     * whose nodes changed the most.
+     *
+     * @return Whether every score in the new report is right, and no phase
+     *         needed more than {@code NODE_TOLERANCE} times its baseline nodes.
+     */
+    private static boolean diff(List<Result> baseline, List<Result> report) {
+        Map<String, Result> before = new HashMap<>();
+        for (Result result : baseline) {
+            before.put(result.moves, result);
+        }
+        boolean passed = true;
+        long[][] nodes = new long[Phase.values().length][2];
+        long[][] micros = new long[Phase.values().length][2];
+        List<String> newFailures = new ArrayList<>();
+        List<String> newPasses = new ArrayList<>();
+        List<Result[]> changed = new ArrayList<>();
+        int missing = 0;
+        int wrong = 0;
+        for (Result result : report) {
+            if (!result.passed) {
+                wrong++;
+            }
+            Result old = before.get(result.moves);
+            if (old == null) {
+                missing++;
+                continue;
+            }
+            int phase = result.phase.ordinal();
+            nodes[phase][0] += old.nodes;
+            nodes[phase][1] += result.nodes;
+            micros[phase][0] += old.micros;
+            micros[phase][1] += result.micros;
+            if (old.passed && !result.passed) {
+                newFailures.add(result.moves);
+            } else if (!old.passed && result.passed) {
+                newPasses.add(result.moves);
+            }
+            if (old.nodes != result.nodes) {
+                changed.add(new Result[] { old, result });
+            }
+        }
+        System.out.println("Compared with the baseline (new/old):");
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            double nodeRatio = nodes[i][1] / (double) Math.max(nodes[i][0], 1);
+            System.out.printf("%-8s %,16d nodes %.3fx   %10.1fms %.3fx%n", phase, nodes[i][1], nodeRatio,
+                    micros[i][1] / 1e3, micros[i][1] / (double) Math.max(micros[i][0], 1));
+            passed &= nodeRatio <= NODE_TOLERANCE;
+        }
+        if (missing > 0) {
+            System.out.println(missing + " positions are not in the baseline.");
+        }
+        System.out.println("Positions with different nodes: " + changed.size());
+        // The largest relative changes either way.
+        changed.sort((a, b) -> Double.compare(Math.abs(Math.log(b[1].nodes / (double) Math.max(b[0].nodes, 1))),
+                Math.abs(Math.log(a[1].nodes / (double) Math.max(a[0].nodes, 1)))));
+        for (int i = 0; i < Math.min(CHANGES_SHOWN, changed.size()); i++) {
+            Result[] change = changed.get(i);
+            System.out.printf("  %-8s %-30s %,12d -> %,12d nodes%n", change[1].phase, change[1].moves,
+                    change[0].nodes, change[1].nodes);
+        }
+        System.out.println("New wrong scores: " + newFailures.size() + (newFailures.isEmpty() ? "" : " " + newFailures));
+        System.out.println("Newly right scores: " + newPasses.size());
+        System.out.println("Wrong scores in the new report: " + wrong);
+        return passed && wrong == 0;
+    }
+
+    /**
+     * Prints the total nodes, time and nodes/s of each phase.
+     */
+    private static void printTotals(List<Result> results) {
+        for (Phase phase : Phase.values()) {
+            long nodes = 0;
+            long micros = 0;
+            int count = 0;
+            for (Result result : results) {
+                if (result.phase == phase) {
+                    nodes += result.nodes;
+                    micros += result.micros;
+                    count++;
+                }
+            }
+            System.out.printf("%-8s %5d positions %,16d nodes %10.1fms %,14.0f nodes/s%n", phase, count, nodes,
+                    micros / 1e3, nodes / Math.max(micros / 1e6, 1e-6));
+        }
+    }
+
+    /**
+     * Makes a suite of {@code perPhase} random positions of each phase, and
+     * writes it to a file. Each position is solved with iterative deepening
+     * until the score is certain (or the search reaches the end of the game);
+     * positions that need more than {@code SOLVE_MILLIS} to solve, and those
+     * where the player to move can win at once, are skipped.
+     */
+    private static void generate(Path path, int perPhase, long seed) throws IOException {
+        FastRandom random = new FastRandom(seed);
+        EngineConfig reference = new EngineConfig("minimax:eval=false,time=" + SOLVE_MILLIS);
+        EngineConfig engine = new EngineConfig("minimax");
+        Set<String> seen = new HashSet<>();
+        long startTime = System.nanoTime();
+        try (BufferedWriter writer = Files.newBufferedWriter(path);
+                PrintWriter out = new PrintWriter(writer)) {
+            out.println("# Connect4 regression suite (see connectgame.tools.RegressionSuite).");
+            out.println("# phase moves depth score budget");
+            for (Phase phase : Phase.values()) {
+                int found = 0;
+                int skipped = 0;
+                while (found < perPhase) {
+                    String moves = randomPosition(phase, random);
+                    if (moves == null || !seen.add(moves)) {
+                        continue;
+                    }
+                    Position solved = solve(phase, moves, reference);
+                    if (solved == null) {
+                        skipped++;
+                        continue;
+                    }
+                    // The budget is from the engine the suite is run with by default.
+                    Connect4 game = solved.newGame(engine);
+                    game.playComputer();
+                    long budget = BUDGET_FACTOR * game.getLastSearchResult().getNodes();
+                    out.println(phase + " " + moves + " " + solved.depth + " " + solved.score + " " + budget);
+                    found++;
+                }
+                System.out.printf("%s: %d positions (%d skipped) after %.1fs%n", phase, found, skipped,
+                        (System.nanoTime() - startTime) / 1e9);
+            }
+        }
+    }
+
+    /**
+     * Returns the moves of a random game stopped after a random amount of
+     * disks in the phase, or null if it ended or the player to move could win
+     * at once.
+     */
+    private static String randomPosition(Phase phase, FastRandom random) {
+        Connect4 game = new Connect4();
+        int disks = phase.minDisks + random.nextInt(phase.maxDisks - phase.minDisks + 1);
+        StringBuilder moves = new StringBuilder();
+        for (int i = 0; i < disks; i++) {
+            int move = game.getGameBoard().getRandomLegal(random);
+            game.play(move);
+            moves.append((char) ('1' + move));
+            if (game.getWinner() != 0) {
+                return null;
+            }
+        }
+        GameBoard board = game.getGameBoard();
+        for (int column : board.getLegal()) {
+            board.putDisk(game.currentTurn(), column);
+            boolean wins = board.hasWon(game.currentTurn());
+            board.popDisk(column);
+            if (wins) {
+                return null;
+            }
+        }
+        return moves.toString();
+    }
+
+    /**
+     * Returns the position with its real score and the depth it is certain at,
+     * or null if that takes more than {@code SOLVE_MILLIS}.
+     */
+    private static Position solve(Phase phase, String moves, EngineConfig reference) {
+        Connect4 game = new Position(phase, moves, BOARD_SPACES - moves.length() - 1, 0, 0).newGame(reference);
+        // Iterative deepening, up to the depth that reaches the end of the game.
+        game.playComputer();
+        SearchResult result = game.getLastSearchResult();
+        if (Math.abs(result.getScore()) > Search.WIN || result.getDepth() == BOARD_SPACES - moves.length() - 1) {
+            return new Position(phase, moves, result.getDepth(), result.getScore(), 0);
+        }
+        return null;
+    }
+
+    private static List<Position> readSuite(Path path) throws IOException {
+        List<Position> suite = new ArrayList<>();
+        for (String line : Files.readAllLines(path)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != 5) {
+                throw new IOException("Not a suite line: " + line);
+            }
+            suite.add(new Position(Phase.valueOf(fields[0]), fields[1], Integer.parseInt(fields[2]),
+                    Integer.parseInt(fields[3]), Long.parseLong(fields[4])));
+        }
+        return suite;
+    }
+
+    private static List<Result> readReport(Path path) throws IOException {
+        List<Result> report = new ArrayList<>();
+        List<String> lines = Files.readAllLines(path);
+        if (lines.isEmpty() || !lines.get(0).equals(REPORT_HEADER)) {
+            throw new IOException("Not a regression report: " + path);
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split(",");
+            report.add(new Result(Phase.valueOf(fields[0]), fields[1], Boolean.parseBoolean(fields[5]),
+                    Long.parseLong(fields[6]), Long.parseLong(fields[8])));
+        }
+        return report;
+    }
+}
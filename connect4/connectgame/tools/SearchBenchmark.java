@@ -0,0 +1,113 @@
+package connectgame.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import connectgame.engine.Connect4;
+import connectgame.engine.FastRandom;
+import connectgame.engine.Search;
+import connectgame.engine.SearchResult;
+
+/**
+ * <h4>SearchBenchmark</h4>
+ * <p>
+ * A headless, single threaded benchmark comparing the searches of two engine
+ * configs (see {@link EngineConfig}) on the same positions. Each position is
+ * reached by random moves from an empty board (the same ones every run), then
+ * searched once by each engine (as a computer move, so a config with a time
+ * budget searches with iterative deepening, and its nodes are those of every
+ * iteration) with a fresh Connect4 instance, and the total
+ * nodes and time of each are printed, along with how often engine B found the
+ * same move, score, and outcome (certain win, certain loss, or neither) as
+ * engine A.
+ * <p>
+ * Usage:
+ * {@code SearchBenchmark <engineA> <engineB> [positions] [minDisks] [maxDisks]}
+ * <p>
+ * For example
+ * {@code SearchBenchmark minimax:depth=14,draws=false minimax:depth=14 200 24 32}
+ * measures draw detection on late game positions, and
+ * {@code SearchBenchmark minimax:depth=12 minimax:depth=12,time=60000}
+ * compares a single search with iterative deepening to the same depth.
+ */
+public class SearchBenchmark {
+    private static final int WARMUP_POSITIONS = 10;
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: SearchBenchmark <engineA> <engineB> [positions] [minDisks] [maxDisks]");
+            return;
+        }
+        EngineConfig[] engines = { new EngineConfig(args[0]), new EngineConfig(args[1]) };
+        int positions = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+        int minDisks = (args.length > 3) ? Integer.parseInt(args[3]) : 20;
+        int maxDisks = (args.length > 4) ? Integer.parseInt(args[4]) : 30;
+        if (engines[0].isRandom() || engines[1].isRandom()) {
+            throw new IllegalArgumentException("Both engines must search.");
+        }
+
+        List<int[]> openings = randomPositions(WARMUP_POSITIONS + positions, minDisks, maxDisks, new FastRandom(1));
+        long[] nodes = new long[2];
+        long[] nanos = new long[2];
+        int sameMove = 0;
+        int sameScore = 0;
+        int sameOutcome = 0;
+        for (int i = 0; i < openings.size(); i++) {
+            SearchResult[] results = new SearchResult[2];
+            for (int e = 0; e < 2; e++) {
+                Connect4 game = new Connect4();
+                engines[e].configure(game);
+                for (int move : openings.get(i)) {
+                    game.play(move);
+                }
+                long startTime = System.nanoTime();
+                engines[e].playMove(game);
+                results[e] = game.getLastSearchResult();
+                if (i >= WARMUP_POSITIONS) { // The first few only warm up the JIT.
+                    nanos[e] += System.nanoTime() - startTime;
+                    nodes[e] += results[e].getNodes();
+                }
+            }
+            if (i >= WARMUP_POSITIONS) {
+                sameMove += (results[0].getBestMove() == results[1].getBestMove()) ? 1 : 0;
+                sameScore += (results[0].getScore() == results[1].getScore()) ? 1 : 0;
+                sameOutcome += (outcome(results[0].getScore()) == outcome(results[1].getScore())) ? 1 : 0;
+            }
+        }
+        System.out.println(positions + " positions with " + minDisks + " to " + maxDisks + " disks");
+        for (int e = 0; e < 2; e++) {
+            System.out.printf("%-40s %,16d nodes %10.1fms %,14.0f nodes/s%n", engines[e], nodes[e], nanos[e] / 1e6,
+                    nodes[e] / (nanos[e] / 1e9));
+        }
+        System.out.printf("B/A: %.2fx nodes, %.2fx time. Same move: %d, same score: %d, same outcome: %d%n",
+                nodes[1] / (double) nodes[0], nanos[1] / (double) nanos[0], sameMove, sameScore, sameOutcome);
+    }
+
+    /**
+     * Returns 1 for a certain win, -1 for a certain loss, otherwise 0.
+     */
+    private static int outcome(int score) {
+        return (score > Search.WIN) ? 1 : (score < -Search.WIN) ? -1 : 0;
+    }
+
+    /**
+     * Returns the moves of {@code count} random games, each stopped (before it
+     * ends) after a random amount of moves between {@code minDisks} and
+     * {@code maxDisks}.
+     */
+    private static List<int[]> randomPositions(int count, int minDisks, int maxDisks, FastRandom random) {
+        List<int[]> positions = new ArrayList<>();
+        while (positions.size() < count) {
+            Connect4 game = new Connect4();
+            int[] moves = new int[minDisks + random.nextInt(maxDisks - minDisks + 1)];
+            for (int i = 0; i < moves.length && game.getWinner() == 0; i++) {
+                moves[i] = game.getGameBoard().getRandomLegal(random);
+                game.play(moves[i]);
+            }
+            if (game.getWinner() == 0) {
+                positions.add(moves);
+            }
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,78 @@
+package connectgame.tools;
+
+import connectgame.engine.Connect4;
+import connectgame.engine.FastRandom;
+import connectgame.server.SessionStore;
+
+/**
+ * <h4>SessionStoreBenchmark</h4>
+ * <p>
+ * Measures the memory used per idle game in a {@link SessionStore}, compared
+ * with keeping the Connect4 objects themselves, and how fast games can be
+ * stored and inflated again.
+ * <p>
+ * Usage: {@code SessionStoreBenchmark [games]} (default 1,000,000).
+ */
+public class SessionStoreBenchmark {
+    private static final int OBJECT_SAMPLE = 20_000;
+
+    public static void main(String[] args) {
+        int games = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        FastRandom random = new FastRandom(1);
+
+        // Store random games of random lengths.
+        SessionStore store = new SessionStore();
+        long heapBefore = usedHeap();
+        long storeNanos = 0;
+        for (int i = 0; i < games; i++) {
+            Connect4 game = randomGame(random);
+            long startTime = System.nanoTime();
+            store.store(game, i & 0xFFFF);
+            storeNanos += System.nanoTime() - startTime;
+        }
+        long heapAfter = usedHeap();
+        System.out.printf("Stored %,d games: %.1f bytes/game (arrays), %.1f bytes/game (heap), %.0f ns/store%n",
+                store.size(), (double) store.memoryUsed() / games, (double) (heapAfter - heapBefore) / games,
+                (double) storeNanos / games);
+
+        long startTime = System.nanoTime();
+        long moves = 0;
+        for (int i = 0; i < games; i += 10) {
+            moves += store.load(i).getHistory().size();
+        }
+        System.out.printf("Inflated %,d games: %.0f ns/game (%d moves)%n", games / 10,
+                (System.nanoTime() - startTime) / (games / 10.0), moves);
+
+        // For comparison, the same kind of games kept as objects.
+        Connect4[] objects = new Connect4[OBJECT_SAMPLE];
+        heapBefore = usedHeap();
+        for (int i = 0; i < OBJECT_SAMPLE; i++) {
+            objects[i] = randomGame(random);
+        }
+        heapAfter = usedHeap();
+        System.out.printf("Connect4 objects: %.0f bytes/game (heap, %d games)%n",
+                (double) (heapAfter - heapBefore) / OBJECT_SAMPLE, objects.length);
+        System.out.printf("Still parked: %,d games%n", store.size()); // Keeps the store reachable until here.
+    }
+
+    /**
+     * Returns a game with a random amount of random moves (which may have
+     * ended).
+     */
+    private static Connect4 randomGame(FastRandom random) {
+        Connect4 game = new Connect4();
+        int moves = random.nextInt(42);
+        for (int i = 0; i < moves && game.getWinner() == 0; i++) {
+            game.play(game.getGameBoard().getRandomLegal(random));
+        }
+        return game;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,211 @@
+package connectgame.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import connectgame.engine.Connect4;
+import connectgame.engine.GameBoard;
+import connectgame.engine.SearchResult;
+
+/**
+ * <h4>Tournament</h4>
+ * <p>
+ * A headless self-play tournament between two engine configs (see
+ * {@link EngineConfig}), to measure whether an engine change makes it stronger,
+ * or faster at the same strength.
+ * <p>
+ * Every game starts from a balanced opening: all the possible sequences of the
+ * first few moves are used in turn, and each opening is played twice with the
+ * engines swapping colours. Games are run in parallel, one per thread. Each
+ * engine has its own Connect4 instance (and so its own transposition table),
+ * and both are told every move.
+ * <p>
+ * Usage:
+ * {@code Tournament <engineA> <engineB> [games] [threads] [openingPlies]}
+ * <p>
+ * For example {@code Tournament minimax:depth=8 mcts:playouts=50000 2000}.
+ * By default every opening of 4 plies is played with both colours (4802 games)
+ * using every core.
+ */
+public class Tournament {
+    private static final double Z_95 = 1.96; // For 95% confidence intervals.
+
+    private final EngineConfig[] engines;
+    private final List<int[]> openings;
+
+    // Results, from engine A's point of view.
+    private final AtomicInteger wins = new AtomicInteger();
+    private final AtomicInteger draws = new AtomicInteger();
+    private final AtomicInteger losses = new AtomicInteger();
+    // Per engine statistics.
+    private final LongAdder[] moves = { new LongAdder(), new LongAdder() };
+    private final LongAdder[] nanos = { new LongAdder(), new LongAdder() };
+    private final LongAdder[] nodes = { new LongAdder(), new LongAdder() };
+
+    /**
+     * Constructs a new Tournament.
+     *
+     * @param engineA      The first engine.
+     * @param engineB      The second engine.
+     * @param openingPlies The amount of moves in each opening.
+     */
+    public Tournament(EngineConfig engineA, EngineConfig engineB, int openingPlies) {
+        this.engines = new EngineConfig[] { engineA, engineB };
+        this.openings = generateOpenings(openingPlies);
+    }
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        if (args.length < 2) {
+            System.out.println("Usage: Tournament <engineA> <engineB> [games] [threads] [openingPlies]");
+            return;
+        }
+        int openingPlies = (args.length > 4) ? Integer.parseInt(args[4]) : 4;
+        Tournament tournament = new Tournament(new EngineConfig(args[0]), new EngineConfig(args[1]), openingPlies);
+        int games = (args.length > 2) ? Integer.parseInt(args[2]) : 2 * tournament.openings.size();
+        int threads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        long startTime = System.nanoTime();
+        tournament.run(games, threads);
+        System.out.print(tournament.report());
+        System.out.printf("Wall time: %.1fs%n", (System.nanoTime() - startTime) / 1e9);
+    }
+
+    /**
+     * Returns every sequence of {@code plies} moves on an empty Connect4 board
+     * that doesn't end the game.
+     */
+    static List<int[]> generateOpenings(int plies) {
+        List<int[]> openings = new ArrayList<>();
+        addOpenings(new Connect4(), new int[plies], 0, openings);
+        return openings;
+    }
+
+    private static void addOpenings(Connect4 game, int[] opening, int ply, List<int[]> openings) {
+        if (ply == opening.length) {
+            openings.add(opening.clone());
+            return;
+        }
+        for (int column = 0; column < game.columns(); column++) {
+            if (game.safePlay(column)) {
+                if (game.getWinner() == 0) {
+                    opening[ply] = column;
+                    addOpenings(game, opening, ply + 1, openings);
+                }
+                game.undoLast();
+            }
+        }
+    }
+
+    /**
+     * Plays the games, in parallel.
+     *
+     * @param games   The amount of games. Openings are reused if there are more
+     *                games than openings (with both colours).
+     * @param threads The amount of games to play at once.
+     */
+    public void run(int games, int threads) throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < games; i++) {
+                final int[] opening = openings.get((i / 2) % openings.size());
+                final boolean engineAIsRed = (i % 2 == 0);
+                results.add(pool.submit(() -> playGame(opening, engineAIsRed)));
+            }
+            int done = 0;
+            for (Future<?> result : results) {
+                result.get();
+                if (++done % Math.max(1, games / 10) == 0) {
+                    System.out.printf("%d/%d games (%+d =%d -%d)%n", done, games, wins.get(), draws.get(),
+                            losses.get());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays a single game and records the result.
+     */
+    private void playGame(int[] opening, boolean engineAIsRed) {
+        // games[i] is the game of engines[i].
+        Connect4[] games = { new Connect4(), new Connect4() };
+        for (int i = 0; i < 2; i++) {
+            engines[i].configure(games[i]);
+            for (int column : opening) {
+                games[i].play(column);
+            }
+        }
+        final int engineADisk = engineAIsRed ? GameBoard.RED : GameBoard.YELLOW;
+        while (games[0].getWinner() == 0) {
+            int mover = (games[0].currentTurn() == engineADisk) ? 0 : 1;
+            long startTime = System.nanoTime();
+            engines[mover].playMove(games[mover]);
+            nanos[mover].add(System.nanoTime() - startTime);
+            moves[mover].increment();
+            SearchResult result = games[mover].getLastSearchResult();
+            if (result != null && !engines[mover].isRandom()) {
+                nodes[mover].add(result.getNodes());
+            }
+            games[1 - mover].play(games[mover].getHistory().lastColumn());
+        }
+        int winner = games[0].getWinner();
+        if (winner == 3) {
+            draws.incrementAndGet();
+        } else if (winner == engineADisk) {
+            wins.incrementAndGet();
+        } else {
+            losses.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the results: win/draw/loss rates and score for engine A with 95%
+     * confidence intervals (also as an Elo difference), and the average time
+     * and nodes per move for each engine.
+     */
+    public String report() {
+        final int w = wins.get();
+        final int d = draws.get();
+        final int l = losses.get();
+        final int n = w + d + l;
+        StringBuilder str = new StringBuilder();
+        str.append(String.format("%nA: %s%nB: %s%n", engines[0], engines[1]));
+        if (n == 0) {
+            return str.append("No games played.\n").toString();
+        }
+        str.append(String.format("Games: %d  A wins: %d (%.1f%%)  Draws: %d (%.1f%%)  B wins: %d (%.1f%%)%n",
+                n, w, 100.0 * w / n, d, 100.0 * d / n, l, 100.0 * l / n));
+        // Each game scores 1, 0.5 or 0 for engine A.
+        double score = (w + 0.5 * d) / n;
+        double variance = (w * Math.pow(1 - score, 2) + d * Math.pow(0.5 - score, 2) + l * Math.pow(score, 2)) / n;
+        double margin = Z_95 * Math.sqrt(variance / n);
+        str.append(String.format("Score for A: %.1f%% +/- %.1f%% (95%%)%n", 100 * score, 100 * margin));
+        str.append(String.format("Elo difference: %s [%s, %s]%n", elo(score), elo(score - margin),
+                elo(score + margin)));
+        for (int i = 0; i < 2; i++) {
+            long moveCount = Math.max(1, moves[i].sum());
+            str.append(String.format("%s: %.2f ms/move, %.0f nodes/move (%d moves)%n", (i == 0) ? "A" : "B",
+                    nanos[i].sum() / 1e6 / moveCount, (double) nodes[i].sum() / moveCount, moves[i].sum()));
+        }
+        return str.toString();
+    }
+
+    /**
+     * Converts a score (0 to 1) to an Elo difference.
+     */
+    private static String elo(double score) {
+        if (score <= 0) {
+            return "-inf";
+        } else if (score >= 1) {
+            return "+inf";
+        }
+        return String.format("%+.0f", -400 * Math.log10(1 / score - 1));
+    }
+}
@@ -1,3 +1,4 @@
 module connect4 {
     requires java.desktop;
+    requires static jdk.incubator.vector; // Optional, used by BoardBatch if present.
 }